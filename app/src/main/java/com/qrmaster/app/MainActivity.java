@@ -3,37 +3,59 @@ package com.qrmaster.app;
 
 import android.os.Bundle;
 import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewTreeObserver;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.Lifecycle;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.qrmaster.app.data.HistoryRetention;
+import com.qrmaster.app.data.QRDatabase;
 import com.qrmaster.app.fragments.ScanFragment;
 import com.qrmaster.app.fragments.CreateFragment;
 import com.qrmaster.app.fragments.HistoryFragment;
 import com.qrmaster.app.fragments.SavedFragment;
+import com.qrmaster.app.utils.Metrics;
 
 public class MainActivity extends AppCompatActivity {
+    private static final String[] TAB_TAGS = {"scan", "create", "history", "saved"};
+    private static final Metrics.Histogram tabCreateTime = Metrics.histogram("ui.tab_create");
+    private static final Metrics.Histogram tabShowTime = Metrics.histogram("ui.tab_show");
+
     private BottomNavigationView bottomNav;
     private FloatingActionButton fabQuickScan;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Open the database while the layout inflates
+        QRDatabase.preOpen(this);
+        long inflateStart = StartupTrace.begin("MainActivity inflate");
         setContentView(R.layout.activity_main);
+        StartupTrace.end("MainActivity inflate", inflateStart);
 
         bottomNav = findViewById(R.id.bottom_navigation);
         //fabQuickScan = findViewById(R.id.fab_quick_scan);
 
         bottomNav.setOnItemSelectedListener(navListener);
         
-        // Load default fragment
+        // Load default fragment - on recreation the FragmentManager restores the tabs itself
         if (savedInstanceState == null) {
-            getSupportFragmentManager().beginTransaction()
-                .replace(R.id.fragment_container, new ScanFragment())
-                .commit();
+            long tabStart = StartupTrace.begin("First tab");
+            showTab(R.id.nav_scan);
+            StartupTrace.end("First tab", tabStart);
         }
 
+        onFirstFrame(() -> {
+            StartupTrace.reportFirstFrame(this);
+            // Nothing on screen needs it, so maintenance waits until launch is over
+            HistoryRetention.scheduleIfDue(this);
+        });
+
         // Quick scan FAB
         /*fabQuickScan.setOnClickListener(v -> {
             getSupportFragmentManager().beginTransaction()
@@ -43,30 +65,81 @@ public class MainActivity extends AppCompatActivity {
         });*/
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Only activity, so this is the app going to the background
+        if (!isChangingConfigurations()) {
+            HistoryRetention.convertWhenIdle(this);
+        }
+    }
+
     private BottomNavigationView.OnItemSelectedListener navListener = 
         new BottomNavigationView.OnItemSelectedListener() {
         @Override
         public boolean onNavigationItemSelected(@NonNull MenuItem item) {
-            Fragment selectedFragment = null;
-
-            int itemId = item.getItemId();
-            if (itemId == R.id.nav_scan) {
-                selectedFragment = new ScanFragment();
-            } else if (itemId == R.id.nav_create) {
-                selectedFragment = new CreateFragment();
-            } else if (itemId == R.id.nav_history) {
-                selectedFragment = new HistoryFragment();
-            } else if (itemId == R.id.nav_saved) {
-                selectedFragment = new SavedFragment();
+            return showTab(item.getItemId());
+        }
+    };
+
+    // Each tab is created once and then shown/hidden, so switching back keeps
+    // its views and camera binding. Hidden tabs are capped at STARTED, since CREATED
+    // would destroy their views; the list tabs detach their observers while hidden.
+    private boolean showTab(int itemId) {
+        String tag = tagForTab(itemId);
+        if (tag == null) return false;
+
+        long start = System.nanoTime();
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        Fragment target = fragmentManager.findFragmentByTag(tag);
+        boolean created = target == null;
+
+        FragmentTransaction transaction = fragmentManager.beginTransaction().setReorderingAllowed(true);
+        for (String otherTag : TAB_TAGS) {
+            Fragment other = fragmentManager.findFragmentByTag(otherTag);
+            if (other != null && other != target && !other.isHidden()) {
+                transaction.hide(other).setMaxLifecycle(other, Lifecycle.State.STARTED);
             }
+        }
+        if (created) {
+            target = createTab(itemId);
+            transaction.add(R.id.fragment_container, target, tag);
+        } else {
+            transaction.show(target).setMaxLifecycle(target, Lifecycle.State.RESUMED);
+        }
+        transaction.commitNow();
 
-            if (selectedFragment != null) {
-                getSupportFragmentManager().beginTransaction()
-                    .replace(R.id.fragment_container, selectedFragment)
-                    .commit();
+        // Time until the next frame is drawn with the new tab
+        Metrics.Histogram timer = created ? tabCreateTime : tabShowTime;
+        findViewById(R.id.fragment_container).post(() -> timer.recordSince(start));
+        return true;
+    }
+
+    private void onFirstFrame(Runnable action) {
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posting lands just after the frame that is about to be drawn
+                decorView.post(action);
                 return true;
             }
-            return false;
-        }
-    };
+        });
+    }
+
+    private String tagForTab(int itemId) {
+        if (itemId == R.id.nav_scan) return TAB_TAGS[0];
+        if (itemId == R.id.nav_create) return TAB_TAGS[1];
+        if (itemId == R.id.nav_history) return TAB_TAGS[2];
+        if (itemId == R.id.nav_saved) return TAB_TAGS[3];
+        return null;
+    }
+
+    private Fragment createTab(int itemId) {
+        if (itemId == R.id.nav_create) return new CreateFragment();
+        if (itemId == R.id.nav_history) return new HistoryFragment();
+        if (itemId == R.id.nav_saved) return new SavedFragment();
+        return new ScanFragment();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+// QRMasterApplication.java - Holds app-wide singletons
+package com.qrmaster.app;
+
+import android.app.Application;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.camera.camera2.Camera2Config;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.CameraXConfig;
+import com.qrmaster.app.data.QRRepository;
+import com.qrmaster.app.utils.ScanWarmup;
+
+public class QRMasterApplication extends Application implements CameraXConfig.Provider {
+    private QRRepository repository;
+
+    @Override
+    public void onCreate() {
+        long start = StartupTrace.begin("Application.onCreate");
+        super.onCreate();
+        startWarmup();
+        StartupTrace.end("Application.onCreate", start);
+    }
+
+    // Camera and decoder start while the first activity inflates
+    protected void startWarmup() {
+        ScanWarmup.start(this);
+    }
+
+    // Only the back camera is used, so CameraX doesn't need to probe the others
+    @NonNull
+    @Override
+    public CameraXConfig getCameraXConfig() {
+        return CameraXConfig.Builder.fromConfig(Camera2Config.defaultConfig())
+            .setAvailableCamerasLimiter(CameraSelector.DEFAULT_BACK_CAMERA)
+            .setMinimumLoggingLevel(Log.ERROR)
+            .build();
+    }
+
+    // One repository for the whole process, shared by every ViewModel
+    public synchronized QRRepository getRepository() {
+        if (repository == null) {
+            long start = StartupTrace.begin("QRRepository init");
+            repository = new QRRepository(this);
+            StartupTrace.end("QRRepository init", start);
+        }
+        return repository;
+    }
+}
@@ -0,0 +1,88 @@
+// StartupTrace.java - Lightweight timing of launch work, written to a local report
+package com.qrmaster.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+    public static final String REPORT_FILE = "startup_report.txt";
+    // Background spans (camera, decoder) usually finish shortly after the first frame
+    static final long REPORT_DELAY_MS = 3000;
+
+    private static final List<String> entries = new ArrayList<>();
+    private static boolean firstFrameSeen;
+    private static boolean reported;
+
+    private StartupTrace() {}
+
+    // Synchronous section - also visible in systrace/Perfetto. Must be ended on the same thread.
+    public static long begin(String name) {
+        Trace.beginSection(name);
+        return SystemClock.elapsedRealtime();
+    }
+
+    public static void end(String name, long startMs) {
+        Trace.endSection();
+        record(name, startMs);
+    }
+
+    // For spans that start and finish on different threads (camera init, model load)
+    public static void record(String name, long startMs) {
+        long now = SystemClock.elapsedRealtime();
+        String entry = String.format(Locale.US, "%-28s start %6d ms  took %5d ms  [%s]",
+            name, startMs - Process.getStartElapsedRealtime(), now - startMs,
+            Thread.currentThread().getName());
+        synchronized (entries) {
+            if (reported) return;
+            entries.add(entry);
+        }
+    }
+
+    // Called when the first frame is drawn. The report is written a little later
+    // so spans still running in the background make it in; anything after is ignored.
+    public static void reportFirstFrame(Context context) {
+        long firstFrame = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+        synchronized (entries) {
+            if (firstFrameSeen) return;
+            firstFrameSeen = true;
+        }
+        Log.i(TAG, "First frame at " + firstFrame + " ms");
+
+        File report = new File(context.getFilesDir(), REPORT_FILE);
+        new Handler(Looper.getMainLooper()).postDelayed(() -> writeReport(report, firstFrame),
+            REPORT_DELAY_MS);
+    }
+
+    private static void writeReport(File report, long firstFrame) {
+        List<String> snapshot;
+        synchronized (entries) {
+            reported = true;
+            snapshot = new ArrayList<>(entries);
+        }
+
+        TaskScheduler.get().execute(TaskScheduler.Lane.MAINTENANCE, () -> {
+            try (Writer writer = new FileWriter(report)) {
+                writer.write("first frame at " + firstFrame + " ms after process start\n");
+                for (String entry : snapshot) {
+                    writer.write(entry);
+                    writer.write('\n');
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write startup report", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,243 @@
+// TaskScheduler.java - App-wide background lanes with bounded queues and per-lane stats
+package com.qrmaster.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import com.qrmaster.app.utils.Metrics;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class TaskScheduler {
+
+    // What a lane does when its queue is full
+    private enum Overflow {
+        WAIT,          // back-pressure: the submitter waits briefly for a slot, then the
+                       // task is dropped and counted. Never runs on the submitting thread,
+                       // so a lane's single worker keeps its ordering.
+        DROP_OLDEST,   // stale work (e.g. off-screen thumbnails) makes room for new work
+        DROP           // reject the new task; the caller retries later
+    }
+
+    // Declared in priority order. Lanes map to Linux nice values, so a busy
+    // maintenance lane can never starve scan decoding.
+    //
+    // DB_WRITE's 512 bounds every write QRRepository makes; Room's own async transactions,
+    // which the app doesn't use, stay on Room's default executor.
+    public enum Lane {
+        CAMERA("camera", 1, 2, Process.THREAD_PRIORITY_DEFAULT, Overflow.WAIT),
+        DB_WRITE("db-write", 1, 512,
+            Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE, Overflow.WAIT),
+        RENDER("render", 2, 64, Process.THREAD_PRIORITY_BACKGROUND, Overflow.DROP_OLDEST),
+        EXPORT("export", 1, 4,
+            Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_LESS_FAVORABLE, Overflow.DROP),
+        MAINTENANCE("maintenance", 1, 4, Process.THREAD_PRIORITY_LOWEST, Overflow.DROP);
+
+        final String threadName;
+        final int threads;
+        final int queueCapacity;
+        final int threadPriority;
+        final Overflow overflow;
+
+        Lane(String threadName, int threads, int queueCapacity, int threadPriority, Overflow overflow) {
+            this.threadName = threadName;
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+            this.threadPriority = threadPriority;
+            this.overflow = overflow;
+        }
+    }
+
+    private static class LaneStats {
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong totalWaitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLong totalRunNanos = new AtomicLong();
+        final AtomicLong maxRunNanos = new AtomicLong();
+
+        void recordWait(long nanos) {
+            totalWaitNanos.addAndGet(nanos);
+            updateMax(maxWaitNanos, nanos);
+        }
+
+        void recordRun(long nanos) {
+            totalRunNanos.addAndGet(nanos);
+            updateMax(maxRunNanos, nanos);
+            completed.incrementAndGet();
+        }
+
+        private static void updateMax(AtomicLong max, long value) {
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // retry
+            }
+        }
+    }
+
+    private static final String TAG = "TaskScheduler";
+    private static final long MAIN_WAIT_MS = 16;
+    private static final long BACKGROUND_WAIT_MS = 2000;
+
+    private static TaskScheduler instance;
+
+    private final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[Lane.values().length];
+    private final LaneStats[] stats = new LaneStats[Lane.values().length];
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized TaskScheduler get() {
+        if (instance == null) {
+            instance = new TaskScheduler();
+        }
+        return instance;
+    }
+
+    private TaskScheduler() {
+        for (Lane lane : Lane.values()) {
+            LaneStats laneStats = new LaneStats();
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                lane.threads, lane.threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(lane.queueCapacity),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(lane.threadPriority);
+                    runnable.run();
+                }, "qr-" + lane.threadName + "-" + threadCount.incrementAndGet()),
+                rejectionHandler(lane, laneStats));
+            // Idle lanes shouldn't pin threads for the whole process lifetime
+            executor.allowCoreThreadTimeOut(true);
+            executors[lane.ordinal()] = executor;
+            stats[lane.ordinal()] = laneStats;
+            Metrics.gauge("scheduler." + lane.threadName + ".queued", () -> executor.getQueue().size());
+        }
+    }
+
+    private static RejectedExecutionHandler rejectionHandler(Lane lane, LaneStats laneStats) {
+        return (runnable, executor) -> {
+            if (executor.isShutdown()) {
+                laneStats.rejected.incrementAndGet();
+                return;
+            }
+            switch (lane.overflow) {
+                case WAIT:
+                    // At most a frame on the main thread, so a full lane can't freeze the UI
+                    long waitMs = Looper.myLooper() == Looper.getMainLooper() ? MAIN_WAIT_MS : BACKGROUND_WAIT_MS;
+                    try {
+                        if (executor.getQueue().offer(runnable, waitMs, TimeUnit.MILLISECONDS)) {
+                            // The queue bypassed execute(), so make sure a worker is there to take it
+                            executor.prestartCoreThread();
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    laneStats.rejected.incrementAndGet();
+                    throw new RejectedExecutionException(lane.threadName + " lane is full");
+                case DROP_OLDEST:
+                    Runnable evicted = executor.getQueue().poll();
+                    if (evicted != null) {
+                        laneStats.rejected.incrementAndGet();
+                        if (evicted instanceof LaneTask) ((LaneTask) evicted).dropped();
+                    }
+                    executor.execute(runnable);
+                    break;
+                case DROP:
+                    laneStats.rejected.incrementAndGet();
+                    throw new RejectedExecutionException(lane.threadName + " lane is full");
+            }
+        };
+    }
+
+    // Returns false if the lane dropped the task because its queue was full
+    public boolean execute(Lane lane, Runnable task) {
+        return execute(lane, task, null);
+    }
+
+    // onDropped is posted to the main thread if a DROP_OLDEST lane later evicts the task
+    // to make room; a task refused outright returns false instead
+    public boolean execute(Lane lane, Runnable task, Runnable onDropped) {
+        LaneStats laneStats = stats[lane.ordinal()];
+        laneStats.submitted.incrementAndGet();
+        try {
+            executors[lane.ordinal()].execute(new LaneTask(task, onDropped, laneStats));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    // For APIs that take an Executor (CameraX analyzers, ML Kit listeners). A full lane
+    // throws RejectedExecutionException, as the Executor contract expects.
+    public Executor executor(Lane lane) {
+        return task -> {
+            if (!execute(lane, task)) {
+                Log.w(TAG, lane.threadName + " lane full, task dropped");
+                throw new RejectedExecutionException(lane.threadName + " lane is full");
+            }
+        };
+    }
+
+    // Records queue wait and run time around the submitted task
+    private final class LaneTask implements Runnable {
+        private final Runnable task;
+        private final Runnable onDropped;
+        private final LaneStats laneStats;
+        private final long enqueued = SystemClock.elapsedRealtimeNanos();
+
+        LaneTask(Runnable task, Runnable onDropped, LaneStats laneStats) {
+            this.task = task;
+            this.onDropped = onDropped;
+            this.laneStats = laneStats;
+        }
+
+        @Override
+        public void run() {
+            long started = SystemClock.elapsedRealtimeNanos();
+            laneStats.recordWait(started - enqueued);
+            try {
+                task.run();
+            } finally {
+                laneStats.recordRun(SystemClock.elapsedRealtimeNanos() - started);
+            }
+        }
+
+        void dropped() {
+            if (onDropped != null) postToMain(onDropped);
+        }
+    }
+
+    public void postToMain(Runnable task) {
+        mainHandler.post(task);
+    }
+
+    public int queueDepth(Lane lane) {
+        return executors[lane.ordinal()].getQueue().size();
+    }
+
+    public String dumpStats() {
+        StringBuilder out = new StringBuilder();
+        for (Lane lane : Lane.values()) {
+            LaneStats s = stats[lane.ordinal()];
+            long completed = Math.max(1, s.completed.get());
+            out.append(String.format(Locale.US,
+                "%s\n  queued %d, active %d, submitted %d, done %d, rejected %d\n" +
+                "  wait avg %.2f ms / max %.2f ms\n  run avg %.2f ms / max %.2f ms\n",
+                lane.threadName,
+                queueDepth(lane), executors[lane.ordinal()].getActiveCount(),
+                s.submitted.get(), s.completed.get(), s.rejected.get(),
+                s.totalWaitNanos.get() / 1e6 / completed, s.maxWaitNanos.get() / 1e6,
+                s.totalRunNanos.get() / 1e6 / completed, s.maxRunNanos.get() / 1e6));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,52 @@
+// CodePagerAdapter.java - Swipeable pages for a set of generated codes
+package com.qrmaster.app.adapters;
+
+import android.graphics.Bitmap;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CodePagerAdapter extends RecyclerView.Adapter<CodePagerAdapter.PageHolder> {
+    private List<Bitmap> pages = new ArrayList<>();
+
+    public void setPages(List<Bitmap> pages) {
+        this.pages = pages;
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public PageHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        // ViewPager2 requires pages that fill it
+        ImageView image = new ImageView(parent.getContext());
+        image.setLayoutParams(new ViewGroup.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        image.setScaleType(ImageView.ScaleType.FIT_CENTER);
+        return new PageHolder(image);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PageHolder holder, int position) {
+        holder.image.setImageBitmap(pages.get(position));
+        holder.image.setContentDescription(pages.size() > 1
+            ? "QR code part " + (position + 1) + " of " + pages.size()
+            : "QR Code Preview");
+    }
+
+    @Override
+    public int getItemCount() {
+        return pages.size();
+    }
+
+    static class PageHolder extends RecyclerView.ViewHolder {
+        final ImageView image;
+
+        PageHolder(ImageView image) {
+            super(image);
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+// IdSelection.java - Multi-select state keyed by row id
+package com.qrmaster.app.adapters;
+
+import android.util.SparseBooleanArray;
+import com.qrmaster.app.models.QRListItem;
+import java.util.ArrayList;
+import java.util.List;
+
+// Ids stay valid across list reloads (unlike row objects) and fit in a Bundle as an int[]
+public class IdSelection {
+    private final SparseBooleanArray ids = new SparseBooleanArray();
+
+    public boolean isSelected(int id) {
+        return ids.get(id);
+    }
+
+    // Returns true if the id is selected afterwards
+    public boolean toggle(int id) {
+        if (ids.get(id)) {
+            ids.delete(id);
+            return false;
+        }
+        ids.put(id, true);
+        return true;
+    }
+
+    public void setAll(List<Integer> newIds) {
+        ids.clear();
+        for (int id : newIds) {
+            ids.put(id, true);
+        }
+    }
+
+    // Drops ids whose rows are no longer in the list, e.g. deleted from another tab
+    public void retainAll(List<QRListItem> items) {
+        if (ids.size() == 0) return;
+        SparseBooleanArray present = new SparseBooleanArray(items.size());
+        for (QRListItem item : items) {
+            if (ids.get(item.getId())) {
+                present.put(item.getId(), true);
+            }
+        }
+        ids.clear();
+        for (int i = 0; i < present.size(); i++) {
+            ids.put(present.keyAt(i), true);
+        }
+    }
+
+    public void clear() {
+        ids.clear();
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public boolean isEmpty() {
+        return ids.size() == 0;
+    }
+
+    public List<Integer> toList() {
+        List<Integer> list = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            list.add(ids.keyAt(i));
+        }
+        return list;
+    }
+
+    public int[] toArray() {
+        int[] array = new int[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.keyAt(i);
+        }
+        return array;
+    }
+
+    public void restore(int[] saved) {
+        ids.clear();
+        for (int id : saved) {
+            ids.put(id, true);
+        }
+    }
+}
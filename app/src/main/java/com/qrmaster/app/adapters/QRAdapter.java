@@ -9,6 +9,11 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,16 +21,20 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.FileProvider;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.viewpager2.widget.ViewPager2;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
-import com.google.zxing.BarcodeFormat;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
 import com.qrmaster.app.R;
+import com.qrmaster.app.TaskScheduler;
 import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.models.QRListItem;
+import com.qrmaster.app.utils.StructuredAppend;
+import com.qrmaster.app.utils.Symbol;
 import com.qrmaster.app.viewmodels.QRViewModel;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -35,30 +44,46 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
 
 public class QRAdapter extends RecyclerView.Adapter<QRAdapter.QRViewHolder> {
-    private List<QRItem> items = new ArrayList<>();
-    private List<QRItem> selectedItems = new ArrayList<>();
+    // Payload for rebinds that only change the selection highlight
+    private static final Object PAYLOAD_SELECTION = new Object();
+    // Full content of truncated rows, so scrolling back doesn't query again
+    private static final int FULL_CONTENT_CACHE_SIZE = 100;
+
+    private List<QRListItem> items = new ArrayList<>();
+    private final SparseIntArray positionById = new SparseIntArray();
+    private IdSelection selection = new IdSelection();
+    private final int selectedColor;
+    private final int unselectedColor;
     private Context context;
     private QRViewModel viewModel;
     private OnItemClickListener listener;
+    private final LruCache<Integer, String> fullContent = new LruCache<>(FULL_CONTENT_CACHE_SIZE);
+    // Truncated rows bound since the last fetch, loaded together in one query
+    private final SparseArray<QRViewHolder> awaitingContent = new SparseArray<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean contentFetchPosted;
     private SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault());
 
     public interface OnItemClickListener {
-        void onItemClick(QRItem item);
-        void onItemLongClick(QRItem item);
-        void onMenuClick(QRItem item);
+        void onItemClick(QRListItem item);
+        void onItemLongClick(QRListItem item);
+        void onMenuClick(QRListItem item);
     }
 
     public QRAdapter(Context context, QRViewModel viewModel) {
-        this.context = context;
-        this.viewModel = viewModel;
+        this(context, viewModel, null);
     }
 
     public QRAdapter(Context context, QRViewModel viewModel, OnItemClickListener listener) {
         this.context = context;
         this.viewModel = viewModel;
         this.listener = listener;
+        selectedColor = context.getResources().getColor(R.color.md_theme_light_primaryContainer, null);
+        unselectedColor = context.getResources().getColor(R.color.md_theme_light_surface, null);
     }
 
     @NonNull
@@ -69,44 +94,65 @@ public class QRAdapter extends RecyclerView.Adapter<QRAdapter.QRViewHolder> {
         return new QRViewHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull QRViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && allSelectionPayloads(payloads)) {
+            bindSelection(holder, items.get(position).getId());
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    private static boolean allSelectionPayloads(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_SELECTION) return false;
+        }
+        return true;
+    }
+
     @Override
     public void onBindViewHolder(@NonNull QRViewHolder holder, int position) {
-        QRItem item = items.get(position);
+        QRListItem item = items.get(position);
+        holder.boundId = item.getId();
         
-        holder.contentText.setText(item.getContent());
+        holder.contentText.setText(item.getContentPreview());
         holder.dateText.setText(dateFormat.format(new Date(item.getTimestamp())));
         
         // Set type icon
         int iconRes = getTypeIcon(item.getType());
         holder.typeIcon.setImageResource(iconRes);
         
-        // Generate QR preview
-        try {
-            Bitmap qrBitmap = generateQRBitmap(item.getContent(), 200, 200, 
-                item.getColorForeground(), item.getColorBackground());
-            holder.qrPreview.setImageBitmap(qrBitmap);
-        } catch (WriterException e) {
-            // Use placeholder
+        // Generate QR preview - long payloads need the full content, batched per frame
+        if (item.isTruncated()) {
+            String content = fullContent.get(item.getId());
+            if (content != null && content.length() == item.getContentLength()) {
+                bindPreview(holder, content, item);
+            } else {
+                holder.qrPreview.setImageDrawable(null);
+                requestFullContent(holder, item.getId());
+            }
+        } else {
+            bindPreview(holder, item.getContentPreview(), item);
         }
         
-        // Set favorite icon
+        // Set favorite icon - an unwritten toggle wins over what the DB last emitted
+        Boolean pendingSaved = viewModel.getPendingSaved(item.getId());
+        if (pendingSaved != null) {
+            item.setSaved(pendingSaved);
+        }
         holder.favoriteIcon.setImageResource(
             item.isSaved() ? R.drawable.ic_favorite : R.drawable.ic_favorite_border
         );
         
         holder.favoriteIcon.setOnClickListener(v -> {
             item.setSaved(!item.isSaved());
-            viewModel.update(item);
-            notifyItemChanged(position);
+            viewModel.toggleSaved(item.getId(), item.isSaved());
+            holder.favoriteIcon.setImageResource(
+                item.isSaved() ? R.drawable.ic_favorite : R.drawable.ic_favorite_border
+            );
         });
         
-        // Selection state
-        boolean isSelected = selectedItems.contains(item);
-        holder.card.setCardBackgroundColor(
-            isSelected ? 
-                context.getResources().getColor(R.color.md_theme_light_primaryContainer, null) :
-                context.getResources().getColor(R.color.md_theme_light_surface, null)
-        );
+        bindSelection(holder, item.getId());
         
         // Click listeners
         holder.itemView.setOnClickListener(v -> {
@@ -131,76 +177,257 @@ public class QRAdapter extends RecyclerView.Adapter<QRAdapter.QRViewHolder> {
         });
     }
 
+    // Rows bound in the same layout pass share one query, posted after the pass ends
+    private void requestFullContent(QRViewHolder holder, int id) {
+        awaitingContent.put(id, holder);
+        if (contentFetchPosted) return;
+        contentFetchPosted = true;
+        mainHandler.post(() -> {
+            contentFetchPosted = false;
+            SparseArray<QRViewHolder> batch = awaitingContent.clone();
+            awaitingContent.clear();
+            List<Integer> ids = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                ids.add(batch.keyAt(i));
+            }
+            viewModel.getItemsByIds(ids, fullItems -> {
+                for (QRItem full : fullItems) {
+                    fullContent.put(full.getId(), full.getContent());
+                    QRViewHolder waiting = batch.get(full.getId());
+                    int position = positionById.get(full.getId(), -1);
+                    if (waiting.boundId == full.getId() && position >= 0) {
+                        bindPreview(waiting, full.getContent(), items.get(position));
+                    }
+                }
+            });
+        });
+    }
+
+    private void bindSelection(QRViewHolder holder, int id) {
+        holder.card.setCardBackgroundColor(selection.isSelected(id) ? selectedColor : unselectedColor);
+    }
+
+    // Thumbnails render on the RENDER lane; results for recycled holders are discarded
+    private void bindPreview(QRViewHolder holder, String content, QRListItem item) {
+        int id = item.getId();
+        holder.qrPreview.setImageDrawable(null);
+        TaskScheduler scheduler = TaskScheduler.get();
+        scheduler.execute(TaskScheduler.Lane.RENDER, () -> {
+            if (holder.boundId != id) return;
+            try {
+                // A split set shows its first part
+                Bitmap qrBitmap = generateQRBitmaps(content, item.getType(), item.getFormat(), 200,
+                    item.getColorForeground(), item.getColorBackground(), 1).get(0);
+                scheduler.postToMain(() -> {
+                    if (holder.boundId == id) {
+                        holder.qrPreview.setImageBitmap(qrBitmap);
+                    }
+                });
+            } catch (WriterException e) {
+                // Use placeholder
+            }
+        });
+    }
+
     @Override
     public int getItemCount() {
         return items.size();
     }
 
-    public void setItems(List<QRItem> newItems) {
+    // Diffs against the current list so a DB emission only rebinds rows that changed
+    public void setItems(List<QRListItem> newItems) {
+        List<QRListItem> oldItems = this.items;
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() { return oldItems.size(); }
+
+            @Override
+            public int getNewListSize() { return newItems.size(); }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldItems.get(oldPosition).getId() == newItems.get(newPosition).getId();
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                QRListItem oldItem = oldItems.get(oldPosition);
+                QRListItem newItem = newItems.get(newPosition);
+                Boolean pendingSaved = viewModel.getPendingSaved(newItem.getId());
+                boolean newSaved = pendingSaved != null ? pendingSaved : newItem.isSaved();
+                return oldItem.isSaved() == newSaved
+                    && oldItem.getTimestamp() == newItem.getTimestamp()
+                    && oldItem.getContentLength() == newItem.getContentLength()
+                    && Objects.equals(oldItem.getType(), newItem.getType())
+                    && Objects.equals(oldItem.getContentPreview(), newItem.getContentPreview())
+                    && Objects.equals(oldItem.getColorForeground(), newItem.getColorForeground())
+                    && Objects.equals(oldItem.getColorBackground(), newItem.getColorBackground())
+                    && Objects.equals(oldItem.getFormat(), newItem.getFormat());
+            }
+        });
         this.items = newItems;
-        notifyDataSetChanged();
+        positionById.clear();
+        for (int i = 0; i < newItems.size(); i++) {
+            positionById.put(newItems.get(i).getId(), i);
+        }
+        diff.dispatchUpdatesTo(this);
+    }
+
+    // Drops rows locally ahead of the DB emission, e.g. right after a soft delete
+    public void removeItems(Set<Integer> ids) {
+        List<QRListItem> remaining = new ArrayList<>(items.size());
+        for (QRListItem item : items) {
+            if (!ids.contains(item.getId())) {
+                remaining.add(item);
+            }
+        }
+        setItems(remaining);
     }
 
-    public void setSelectedItems(List<QRItem> selected) {
-        this.selectedItems = selected;
-        notifyDataSetChanged();
+    public void setSelection(IdSelection selection) {
+        this.selection = selection;
+        notifySelectionChanged();
     }
 
+    // Rebinds just the highlight of one row after its selection was toggled
+    public void notifySelectionChanged(int id) {
+        int position = positionById.get(id, -1);
+        if (position >= 0) {
+            notifyItemChanged(position, PAYLOAD_SELECTION);
+        }
+    }
+
+    public void notifySelectionChanged() {
+        notifyItemRangeChanged(0, items.size(), PAYLOAD_SELECTION);
+    }
+
+    // The full entity is only loaded once the dialog is requested
+    public void showDetailDialog(QRListItem row, Activity activity) {
+        viewModel.getItemById(row.getId(), item -> {
+            if (item != null && !activity.isFinishing()) {
+                showDetailDialog(item, activity);
+            }
+        });
+    }
+
+    // The dialog opens with the text at once; the codes render on the RENDER lane,
+    // since a split set can be up to MAX_PARTS full-size renders
     public void showDetailDialog(QRItem item, Activity activity) {
         View dialogView = LayoutInflater.from(context).inflate(R.layout.dialog_qr_full, null);
         
-        ImageView qrImage = dialogView.findViewById(R.id.qr_full_image);
+        ViewPager2 pager = dialogView.findViewById(R.id.qr_full_pager);
+        TextView partsText = dialogView.findViewById(R.id.qr_full_parts);
         TextView typeText = dialogView.findViewById(R.id.qr_full_type);
         TextView contentText = dialogView.findViewById(R.id.qr_full_content);
         TextView dateText = dialogView.findViewById(R.id.qr_full_date);
         
-        try {
-            Bitmap qrBitmap = generateQRBitmap(item.getContent(), 512, 512, 
-                item.getColorForeground(), item.getColorBackground());
-            qrImage.setImageBitmap(qrBitmap);
-        } catch (WriterException e) {
-            // Handle error
-        }
-        
         typeText.setText(item.getType());
         contentText.setText(item.getContent());
         dateText.setText(dateFormat.format(new Date(item.getTimestamp())));
         
-        new MaterialAlertDialogBuilder(context)
+        AlertDialog dialog = new MaterialAlertDialogBuilder(context)
             .setView(dialogView)
-            .setPositiveButton("Share", (dialog, which) -> shareQRCode(item, context))
-            .setNeutralButton("Copy", (dialog, which) -> copyToClipboard(item.getContent()))
+            .setPositiveButton("Share", (d, which) -> shareQRCode(item, context))
+            .setNeutralButton("Copy", (d, which) -> copyToClipboard(item.getContent()))
             .setNegativeButton("Close", null)
             .show();
+
+        TaskScheduler scheduler = TaskScheduler.get();
+        scheduler.execute(TaskScheduler.Lane.RENDER, () -> {
+            List<Bitmap> rendered;
+            try {
+                rendered = generateQRBitmaps(item.getContent(), item.getType(), item.getFormat(), 512,
+                    item.getColorForeground(), item.getColorBackground(), StructuredAppend.MAX_PARTS);
+            } catch (WriterException e) {
+                rendered = null;
+            }
+            List<Bitmap> codes = rendered;
+            scheduler.postToMain(() -> {
+                if (!dialog.isShowing() || activity.isFinishing()) return;
+                if (codes == null) {
+                    partsText.setVisibility(View.VISIBLE);
+                    partsText.setText("Too long to encode");
+                } else {
+                    showCodes(pager, partsText, codes);
+                }
+            });
+        }, () -> {
+            if (!dialog.isShowing()) return;
+            partsText.setVisibility(View.VISIBLE);
+            partsText.setText("Could not render the code, reopen to try again");
+        });
+    }
+
+    private static void showCodes(ViewPager2 pager, TextView partsText, List<Bitmap> codes) {
+        CodePagerAdapter pages = new CodePagerAdapter();
+        pages.setPages(codes);
+        pager.setAdapter(pages);
+        if (codes.size() > 1) {
+            partsText.setVisibility(View.VISIBLE);
+            partsText.setText("Part 1 of " + codes.size() + " - swipe for the rest");
+            pager.registerOnPageChangeCallback(new ViewPager2.OnPageChangeCallback() {
+                @Override
+                public void onPageSelected(int position) {
+                    partsText.setText("Part " + (position + 1) + " of " + codes.size());
+                }
+            });
+        }
+    }
+
+    public void shareQRCode(QRListItem row, Context context) {
+        viewModel.getItemById(row.getId(), item -> {
+            if (item != null) {
+                shareQRCode(item, context);
+            }
+        });
     }
 
+    // A split set goes out as every part, in scanning order. The parts are rendered and
+    // written on the RENDER lane; the chooser opens once they are ready.
     public void shareQRCode(QRItem item, Context context) {
-        try {
-            Bitmap qrBitmap = generateQRBitmap(item.getContent(), 512, 512, 
-                item.getColorForeground(), item.getColorBackground());
-            
-            File cachePath = new File(context.getCacheDir(), "images");
-            cachePath.mkdirs();
-            
-            File imageFile = new File(cachePath, "qr_share.png");
-            FileOutputStream stream = new FileOutputStream(imageFile);
-            qrBitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-            stream.close();
-            
-            Uri imageUri = FileProvider.getUriForFile(context, 
-                context.getPackageName() + ".fileprovider", imageFile);
-            
-            Intent shareIntent = new Intent(Intent.ACTION_SEND);
-            shareIntent.setType("image/png");
-            shareIntent.putExtra(Intent.EXTRA_STREAM, imageUri);
-            shareIntent.putExtra(Intent.EXTRA_TEXT, item.getContent());
-            shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-            
-            context.startActivity(Intent.createChooser(shareIntent, "Share QR Code"));
+        TaskScheduler scheduler = TaskScheduler.get();
+        scheduler.execute(TaskScheduler.Lane.RENDER, () -> {
+            ArrayList<Uri> imageUris;
+            try {
+                List<Bitmap> codes = generateQRBitmaps(item.getContent(), item.getType(), item.getFormat(), 512,
+                    item.getColorForeground(), item.getColorBackground(), StructuredAppend.MAX_PARTS);
+                
+                File cachePath = new File(context.getCacheDir(), "images");
+                cachePath.mkdirs();
+                
+                imageUris = new ArrayList<>(codes.size());
+                for (int i = 0; i < codes.size(); i++) {
+                    File imageFile = new File(cachePath, codes.size() > 1
+                        ? String.format(Locale.US, "qr_share_part%02d.png", i + 1) : "qr_share.png");
+                    try (FileOutputStream stream = new FileOutputStream(imageFile)) {
+                        codes.get(i).compress(Bitmap.CompressFormat.PNG, 100, stream);
+                    }
+                    imageUris.add(FileProvider.getUriForFile(context,
+                        context.getPackageName() + ".fileprovider", imageFile));
+                }
+            } catch (WriterException | IOException e) {
+                scheduler.postToMain(() ->
+                    Toast.makeText(context, "Error sharing QR code", Toast.LENGTH_SHORT).show());
+                return;
+            }
             
-        } catch (WriterException | IOException e) {
-            Toast.makeText(context, "Error sharing QR code", Toast.LENGTH_SHORT).show();
-        }
+            scheduler.postToMain(() -> {
+                if (context instanceof Activity && ((Activity) context).isFinishing()) return;
+                Intent shareIntent;
+                if (imageUris.size() > 1) {
+                    shareIntent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+                    shareIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, imageUris);
+                } else {
+                    shareIntent = new Intent(Intent.ACTION_SEND);
+                    shareIntent.putExtra(Intent.EXTRA_STREAM, imageUris.get(0));
+                }
+                shareIntent.setType("image/png");
+                shareIntent.putExtra(Intent.EXTRA_TEXT, item.getContent());
+                shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                
+                context.startActivity(Intent.createChooser(shareIntent, "Share QR Code"));
+            });
+        }, () -> Toast.makeText(context, "Could not prepare the share, try again", Toast.LENGTH_SHORT).show());
     }
 
     private void copyToClipboard(String text) {
@@ -210,23 +437,15 @@ public class QRAdapter extends RecyclerView.Adapter<QRAdapter.QRViewHolder> {
         Toast.makeText(context, "Copied to clipboard", Toast.LENGTH_SHORT).show();
     }
 
-    private Bitmap generateQRBitmap(String content, int width, int height, 
-                                    String fgColor, String bgColor) throws WriterException {
-        QRCodeWriter writer = new QRCodeWriter();
-        BitMatrix bitMatrix = writer.encode(content, BarcodeFormat.QR_CODE, width, height);
-        
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
-        
-        int fg = Color.parseColor(fgColor);
-        int bg = Color.parseColor(bgColor);
-        
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                bitmap.setPixel(x, y, bitMatrix.get(x, y) ? fg : bg);
-            }
+    // One bitmap per code, at most limit of them; a split set has several
+    private List<Bitmap> generateQRBitmaps(String content, String type, String format, int size,
+                                           String fgColor, String bgColor, int limit) throws WriterException {
+        List<Symbol> symbols = StructuredAppend.encodeStored(content, type, format);
+        List<Bitmap> bitmaps = new ArrayList<>(Math.min(limit, symbols.size()));
+        for (int i = 0; i < symbols.size() && i < limit; i++) {
+            bitmaps.add(symbols.get(i).toBitmap(size, Color.parseColor(fgColor), Color.parseColor(bgColor)));
         }
-        
-        return bitmap;
+        return bitmaps;
     }
 
     private int getTypeIcon(String type) {
@@ -247,6 +466,7 @@ public class QRAdapter extends RecyclerView.Adapter<QRAdapter.QRViewHolder> {
         MaterialCardView card;
         ImageView qrPreview, typeIcon, favoriteIcon, menuIcon;
         TextView contentText, dateText;
+        volatile int boundId;
 
         public QRViewHolder(@NonNull View itemView) {
             super(itemView);
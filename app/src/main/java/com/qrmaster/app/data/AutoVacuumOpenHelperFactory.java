@@ -0,0 +1,67 @@
+// AutoVacuumOpenHelperFactory.java - Creates new database files with incremental auto_vacuum
+package com.qrmaster.app.data;
+
+import android.database.Cursor;
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+
+// auto_vacuum can only be switched on before the first table exists, and Room's own
+// callbacks run after it has created its tables, so this hooks onConfigure instead.
+// Files that already have tables are converted once by HistoryRetention.
+final class AutoVacuumOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+    private final SupportSQLiteOpenHelper.Factory delegate = new FrameworkSQLiteOpenHelperFactory();
+
+    @NonNull
+    @Override
+    public SupportSQLiteOpenHelper create(@NonNull SupportSQLiteOpenHelper.Configuration configuration) {
+        SupportSQLiteOpenHelper.Callback roomCallback = configuration.callback;
+        return delegate.create(SupportSQLiteOpenHelper.Configuration.builder(configuration.context)
+            .name(configuration.name)
+            .noBackupDirectory(configuration.useNoBackupDirectory)
+            .allowDataLossOnRecovery(configuration.allowDataLossOnRecovery)
+            .callback(new SupportSQLiteOpenHelper.Callback(roomCallback.version) {
+                @Override
+                public void onConfigure(@NonNull SupportSQLiteDatabase db) {
+                    if (isEmpty(db)) {
+                        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                    }
+                    roomCallback.onConfigure(db);
+                }
+
+                @Override
+                public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                    roomCallback.onCreate(db);
+                }
+
+                @Override
+                public void onUpgrade(@NonNull SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+                    roomCallback.onUpgrade(db, oldVersion, newVersion);
+                }
+
+                @Override
+                public void onDowngrade(@NonNull SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+                    roomCallback.onDowngrade(db, oldVersion, newVersion);
+                }
+
+                @Override
+                public void onOpen(@NonNull SupportSQLiteDatabase db) {
+                    roomCallback.onOpen(db);
+                }
+
+                @Override
+                public void onCorruption(@NonNull SupportSQLiteDatabase db) {
+                    roomCallback.onCorruption(db);
+                }
+            })
+            .build());
+    }
+
+    // No schema yet; page_count alone isn't enough, since switching to WAL may write page 1
+    private static boolean isEmpty(SupportSQLiteDatabase db) {
+        try (Cursor cursor = db.query("SELECT COUNT(*) FROM sqlite_master")) {
+            return cursor.moveToFirst() && cursor.getLong(0) == 0;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+// HistoryApi.java - Read-only JSON routes over qr_items for the LAN server
+package com.qrmaster.app.data;
+
+import android.database.Cursor;
+import com.qrmaster.app.server.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.json.JSONObject;
+
+// GET /                          {"app":..., "items": live row count}
+// GET /items?after=ID&limit=N     rows with id > after, in id order
+// GET /search?q=TEXT&after=&limit= the same, limited to content containing q
+// Pages are {"items":[...], "next": id to pass as after, or null on the last page}
+public class HistoryApi {
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 500;
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final QRDao qrDao;
+
+    public HistoryApi(QRDatabase database) {
+        this.qrDao = database.qrDao();
+    }
+
+    // False if the path isn't one of these routes
+    public boolean handle(HttpServer.Request request, HttpServer.Response response) throws IOException {
+        switch (request.path) {
+            case "/":
+                String status = "{\"app\":\"QR Master\",\"items\":" + qrDao.countLive() + "}\n";
+                response.send(200, JSON, status.getBytes(StandardCharsets.UTF_8));
+                return true;
+            case "/items":
+                page(request, response, null);
+                return true;
+            case "/search":
+                String q = request.query("q");
+                if (q == null || q.isEmpty()) {
+                    response.sendText(400, "Missing q");
+                } else {
+                    page(request, response, q);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Rows go out as they are read from the cursor, a chunk at a time
+    private void page(HttpServer.Request request, HttpServer.Response response, String q) throws IOException {
+        int after;
+        int limit;
+        try {
+            after = Math.max(0, intParam(request, "after", 0));
+            limit = Math.max(1, Math.min(MAX_LIMIT, intParam(request, "limit", DEFAULT_LIMIT)));
+        } catch (NumberFormatException e) {
+            response.sendText(400, "after and limit must be numbers");
+            return;
+        }
+
+        try (Cursor cursor = q == null
+                ? qrDao.getPageCursor(after, limit)
+                : qrDao.searchPageCursor(after, likePattern(q), limit)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                response.startChunked(200, JSON), StandardCharsets.UTF_8), HttpServer.CHUNK_SIZE);
+            int[] indexes = HistoryBackup.columnIndexes(cursor);
+            String[] values = new String[indexes.length];
+            int rows = 0;
+            int lastId = after;
+
+            writer.write("{\"items\":[");
+            while (cursor.moveToNext()) {
+                HistoryBackup.readRow(cursor, indexes, values);
+                lastId = cursor.getInt(indexes[0]);
+                if (rows++ > 0) {
+                    writer.write(',');
+                }
+                HistoryBackup.writeJsonObject(writer, values);
+            }
+            writer.write("],\"next\":");
+            writer.write(rows == limit ? Integer.toString(lastId) : "null");
+            writer.write(",\"query\":");
+            writer.write(q == null ? "null" : JSONObject.quote(q));
+            writer.write("}\n");
+            writer.flush();
+        }
+    }
+
+    private static int intParam(HttpServer.Request request, String name, int fallback) {
+        String value = request.query(name);
+        return value == null || value.isEmpty() ? fallback : Integer.parseInt(value);
+    }
+
+    // Substring match with LIKE wildcards in q taken literally
+    private static String likePattern(String q) {
+        StringBuilder pattern = new StringBuilder("%");
+        for (int i = 0; i < q.length(); i++) {
+            char c = q.charAt(i);
+            if (c == '%' || c == '_' || c == '\\') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+}
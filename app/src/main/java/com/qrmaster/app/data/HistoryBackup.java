@@ -0,0 +1,301 @@
+// HistoryBackup.java - Streaming export/import of qr_items as JSONL or CSV
+package com.qrmaster.app.data;
+
+import android.database.Cursor;
+import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.utils.SymbologyRegistry;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class HistoryBackup {
+    private static final int EXPORT_PAGE_SIZE = 500;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final String[] COLUMNS = {
+        "id", "content", "type", "timestamp", "isSaved", "isGenerated",
+        "colorForeground", "colorBackground", "format"
+    };
+
+    public enum Format { JSONL, CSV }
+
+    // Called after every page or batch with the running row count
+    public interface ProgressListener {
+        void onProgress(long rows);
+    }
+
+    private final QRDao qrDao;
+    private final SeenIndex seenIndex;
+
+    public HistoryBackup(QRDatabase database) {
+        this.qrDao = database.qrDao();
+        this.seenIndex = SeenIndex.get(database);
+    }
+
+    // Walks the table in id order one keyset page at a time, so memory use is
+    // bounded by the page size regardless of how many rows exist
+    public long export(OutputStream out, Format format, ProgressListener listener) throws IOException {
+        Writer writer = new BufferedWriter(
+            new OutputStreamWriter(out, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+        if (format == Format.CSV) {
+            writeCsvRecord(writer, COLUMNS);
+        }
+
+        String[] values = new String[COLUMNS.length];
+        long rows = 0;
+        int lastId = 0;
+        int pageRows;
+        do {
+            pageRows = 0;
+            try (Cursor cursor = qrDao.getPageCursor(lastId, EXPORT_PAGE_SIZE)) {
+                int[] indexes = columnIndexes(cursor);
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getInt(indexes[0]);
+                    readRow(cursor, indexes, values);
+                    if (format == Format.CSV) {
+                        writeCsvRecord(writer, values);
+                    } else {
+                        writeJsonLine(writer, values);
+                    }
+                    pageRows++;
+                }
+            }
+            rows += pageRows;
+            if (listener != null) {
+                listener.onProgress(rows);
+            }
+        } while (pageRows == EXPORT_PAGE_SIZE);
+
+        writer.flush();
+        return rows;
+    }
+
+    // Parses one record at a time and inserts in batches of batchSize, each
+    // batch in its own transaction. Imported rows get fresh ids.
+    public long importFrom(InputStream in, Format format, int batchSize,
+                           ProgressListener listener) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+        List<QRItem> batch = new ArrayList<>(batchSize);
+        long rows = 0;
+
+        if (format == Format.CSV) {
+            List<String> header = readCsvRecord(reader);
+            if (header == null) {
+                return 0;
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).trim(), i);
+            }
+            if (!columns.containsKey("content")) {
+                throw new IOException("CSV header has no content column");
+            }
+
+            List<String> record;
+            while ((record = readCsvRecord(reader)) != null) {
+                if (record.size() == 1 && record.get(0).isEmpty()) {
+                    continue;
+                }
+                batch.add(itemFromCsv(record, columns));
+                if (batch.size() >= batchSize) {
+                    rows = flush(batch, rows, listener);
+                }
+            }
+        } else {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    batch.add(itemFromJson(new JSONObject(line)));
+                } catch (JSONException e) {
+                    throw new IOException("Malformed JSON on line " + lineNumber, e);
+                }
+                if (batch.size() >= batchSize) {
+                    rows = flush(batch, rows, listener);
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            rows = flush(batch, rows, listener);
+        }
+        return rows;
+    }
+
+    // @Insert with a list runs as a single transaction
+    private long flush(List<QRItem> batch, long rows, ProgressListener listener) {
+        qrDao.insertAll(batch);
+        for (QRItem item : batch) {
+            seenIndex.add(item.getContentHash());
+        }
+        rows += batch.size();
+        batch.clear();
+        if (listener != null) {
+            listener.onProgress(rows);
+        }
+        return rows;
+    }
+
+    // Positions of COLUMNS in a SELECT * cursor; id comes first
+    static int[] columnIndexes(Cursor cursor) {
+        int[] indexes = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            indexes[i] = cursor.getColumnIndexOrThrow(COLUMNS[i]);
+        }
+        return indexes;
+    }
+
+    static void readRow(Cursor cursor, int[] indexes, String[] values) {
+        for (int i = 0; i < indexes.length; i++) {
+            values[i] = cursor.getString(indexes[i]);
+        }
+    }
+
+    private static void writeJsonLine(Writer writer, String[] values) throws IOException {
+        writeJsonObject(writer, values);
+        writer.write('\n');
+    }
+
+    // One row in the export's JSON shape; the LAN API uses the same one
+    static void writeJsonObject(Writer writer, String[] values) throws IOException {
+        writer.write('{');
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(JSONObject.quote(COLUMNS[i]));
+            writer.write(':');
+            String column = COLUMNS[i];
+            if (column.equals("content") || column.equals("type") || column.equals("format")
+                    || column.startsWith("color")) {
+                writer.write(JSONObject.quote(values[i]));
+            } else if (column.startsWith("is")) {
+                writer.write("1".equals(values[i]) ? "true" : "false");
+            } else {
+                writer.write(values[i] == null ? "0" : values[i]);
+            }
+        }
+        writer.write('}');
+    }
+
+    private static void writeCsvRecord(Writer writer, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String value = values[i] == null ? "" : values[i];
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(value);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    // RFC 4180 record reader - quoted fields may span lines (vCards do)
+    private static List<String> readCsvRecord(BufferedReader reader) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean readAny = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            readAny = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                fields.add(field.toString());
+                return fields;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (!readAny) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static QRItem itemFromCsv(List<String> record, Map<String, Integer> columns) {
+        QRItem item = new QRItem(
+            csvValue(record, columns, "content", ""),
+            csvValue(record, columns, "type", "Text"),
+            parseLong(csvValue(record, columns, "timestamp", null)));
+        item.setSaved("1".equals(csvValue(record, columns, "isSaved", "0")));
+        item.setGenerated("1".equals(csvValue(record, columns, "isGenerated", "0")));
+        item.setColorForeground(csvValue(record, columns, "colorForeground", "#000000"));
+        item.setColorBackground(csvValue(record, columns, "colorBackground", "#FFFFFF"));
+        item.setFormat(SymbologyRegistry.parse(csvValue(record, columns, "format", null)).name());
+        return item;
+    }
+
+    private static String csvValue(List<String> record, Map<String, Integer> columns,
+                                   String column, String fallback) {
+        Integer index = columns.get(column);
+        if (index == null || index >= record.size() || record.get(index).isEmpty()) {
+            return fallback;
+        }
+        return record.get(index);
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value == null ? System.currentTimeMillis() : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    private static QRItem itemFromJson(JSONObject json) throws JSONException {
+        QRItem item = new QRItem(
+            json.getString("content"),
+            json.optString("type", "Text"),
+            json.optLong("timestamp", System.currentTimeMillis()));
+        item.setSaved(json.optBoolean("isSaved", false));
+        item.setGenerated(json.optBoolean("isGenerated", false));
+        item.setColorForeground(json.optString("colorForeground", "#000000"));
+        item.setColorBackground(json.optString("colorBackground", "#FFFFFF"));
+        // Backups from before symbology selection have no format field
+        item.setFormat(SymbologyRegistry.parse(json.optString("format", null)).name());
+        return item;
+    }
+}
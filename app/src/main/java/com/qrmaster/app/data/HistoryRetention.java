@@ -0,0 +1,213 @@
+// HistoryRetention.java - Trims old history in small batches when a limit is set
+package com.qrmaster.app.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import com.qrmaster.app.TaskScheduler;
+
+public class HistoryRetention {
+    private static final String TAG = "HistoryRetention";
+    private static final String PREFS_NAME = "retention";
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final long RUN_INTERVAL_MS = 24L * 60 * 60 * 1000;
+
+    public static class Policy {
+        public final int maxRows;
+        public final long maxAgeMillis;
+        public final boolean keepSaved;
+        public final int batchSize;
+
+        public Policy(int maxRows, long maxAgeMillis, boolean keepSaved, int batchSize) {
+            this.maxRows = maxRows;
+            this.maxAgeMillis = maxAgeMillis;
+            this.keepSaved = keepSaved;
+            // A batch of 0 would delete nothing and never finish
+            this.batchSize = Math.max(1, batchSize);
+        }
+
+        // Values of 0 disable the corresponding limit. Both stay off until the user picks
+        // a limit under History > Auto-cleanup, since rows removed here are hard-deleted.
+        public static Policy fromPreferences(Context context) {
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            return new Policy(
+                prefs.getInt("max_rows", 0),
+                prefs.getLong("max_age_days", 0) * 24L * 60 * 60 * 1000,
+                prefs.getBoolean("keep_saved", true),
+                prefs.getInt("batch_size", 200)
+            );
+        }
+
+        public static void save(Context context, int maxRows, int maxAgeDays) {
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putInt("max_rows", maxRows)
+                .putLong("max_age_days", maxAgeDays)
+                .apply();
+        }
+
+        public boolean isEnabled() {
+            return maxRows > 0 || maxAgeMillis > 0;
+        }
+    }
+
+    public static class Result {
+        public final int rowsRemoved;
+        public final long bytesReclaimed;
+        public final long durationMs;
+
+        Result(int rowsRemoved, long bytesReclaimed, long durationMs) {
+            this.rowsRemoved = rowsRemoved;
+            this.bytesReclaimed = bytesReclaimed;
+            this.durationMs = durationMs;
+        }
+
+        @Override
+        public String toString() {
+            return "removed " + rowsRemoved + " rows, reclaimed " + bytesReclaimed
+                + " bytes in " + durationMs + " ms";
+        }
+    }
+
+    // Delivered on the main thread
+    public interface Callback {
+        void onFinished(Result result);
+    }
+
+    private final QRDatabase database;
+    private final QRDao qrDao;
+    private final Policy policy;
+
+    public HistoryRetention(QRDatabase database, Policy policy) {
+        this.database = database;
+        this.qrDao = database.qrDao();
+        this.policy = policy;
+    }
+
+    // Runs at most once per RUN_INTERVAL_MS on the maintenance lane
+    public static void scheduleIfDue(Context context) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong("last_run", 0) < RUN_INTERVAL_MS) {
+            return;
+        }
+        Policy policy = Policy.fromPreferences(appContext);
+        if (!policy.isEnabled()) {
+            return;
+        }
+
+        boolean queued = TaskScheduler.get().execute(TaskScheduler.Lane.MAINTENANCE, () ->
+            new HistoryRetention(QRDatabase.getInstance(appContext), policy).run());
+        if (queued) {
+            prefs.edit().putLong("last_run", now).apply();
+        }
+    }
+
+    // Runs the saved policy now, e.g. right after the user changed it. Returns false if
+    // the maintenance lane is full.
+    public static boolean runNow(Context context, Callback callback) {
+        Context appContext = context.getApplicationContext();
+        Policy policy = Policy.fromPreferences(appContext);
+        TaskScheduler scheduler = TaskScheduler.get();
+        return scheduler.execute(TaskScheduler.Lane.MAINTENANCE, () -> {
+            Result result = new HistoryRetention(QRDatabase.getInstance(appContext), policy).run();
+            appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong("last_run", System.currentTimeMillis()).apply();
+            scheduler.postToMain(() -> callback.onFinished(result));
+        });
+    }
+
+    // Files created before AutoVacuumOpenHelperFactory need one full VACUUM to switch to
+    // incremental auto_vacuum. It can't run in Room's migration transaction and locks the
+    // whole file while it rewrites it, so it waits until the app is in the background and
+    // only happens once a limit is set. Call when the last activity stops.
+    public static void convertWhenIdle(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (!Policy.fromPreferences(appContext).isEnabled()) {
+            return;
+        }
+        TaskScheduler scheduler = TaskScheduler.get();
+        scheduler.execute(TaskScheduler.Lane.MAINTENANCE, () -> {
+            // Pending writes mean the app isn't idle after all; the next stop retries
+            if (scheduler.queueDepth(TaskScheduler.Lane.DB_WRITE) > 0) {
+                return;
+            }
+            SupportSQLiteDatabase db = QRDatabase.getInstance(appContext).getOpenHelper().getWritableDatabase();
+            if (queryLong(db, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                return;
+            }
+            long start = SystemClock.elapsedRealtime();
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            Log.i(TAG, "Switched to incremental auto_vacuum in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        });
+    }
+
+    // Blocking - call from a background thread
+    public Result run() {
+        long start = SystemClock.elapsedRealtime();
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        long sizeBefore = fileSize(db);
+
+        int removed = 0;
+        if (policy.maxAgeMillis > 0) {
+            long cutoff = System.currentTimeMillis() - policy.maxAgeMillis;
+            removed += deleteInBatches(() ->
+                qrDao.deleteOlderThanBatch(cutoff, policy.keepSaved, policy.batchSize));
+        }
+        if (policy.maxRows > 0) {
+            removed += deleteInBatches(() ->
+                qrDao.deleteBeyondNewestBatch(policy.maxRows, policy.keepSaved, policy.batchSize));
+        }
+
+        if (removed > 0) {
+            SeenIndex.get(database).noteRemoved(removed);
+            compact(db);
+        }
+
+        Result result = new Result(removed, Math.max(0, sizeBefore - fileSize(db)),
+            SystemClock.elapsedRealtime() - start);
+        Log.i(TAG, "Retention run: " + result);
+        return result;
+    }
+
+    private interface BatchDelete {
+        int deleteBatch();
+    }
+
+    // Each batch is its own short write transaction so readers are never blocked for long
+    private int deleteInBatches(BatchDelete batch) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = batch.deleteBatch();
+            total += deleted;
+            if (deleted > 0) {
+                Thread.yield();
+            }
+        } while (deleted >= policy.batchSize);
+        return total;
+    }
+
+    // Never a full VACUUM here: it holds an exclusive lock for as long as it rewrites the
+    // file. Until convertWhenIdle has run, freed pages stay in the file and are reused.
+    private void compact(SupportSQLiteDatabase db) {
+        if (queryLong(db, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+            db.execSQL("PRAGMA incremental_vacuum");
+        }
+    }
+
+    private static long fileSize(SupportSQLiteDatabase db) {
+        return queryLong(db, "PRAGMA page_count") * queryLong(db, "PRAGMA page_size");
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
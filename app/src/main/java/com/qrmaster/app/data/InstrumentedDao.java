@@ -0,0 +1,52 @@
+// InstrumentedDao.java - Times every QRDao call into Metrics without touching the DAO itself
+package com.qrmaster.app.data;
+
+import android.database.Cursor;
+import androidx.lifecycle.LiveData;
+import com.qrmaster.app.utils.Metrics;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A dynamic proxy, so new DAO methods are timed as "db.<method>" with no extra code.
+// Default methods run inside the Room implementation and are timed as one call.
+final class InstrumentedDao {
+    private static final Metrics.Counter errors = Metrics.counter("db.errors");
+
+    private InstrumentedDao() {}
+
+    static QRDao wrap(QRDao dao) {
+        Map<Method, Metrics.Histogram> timers = new ConcurrentHashMap<>();
+        return (QRDao) Proxy.newProxyInstance(QRDao.class.getClassLoader(), new Class<?>[]{QRDao.class},
+            (proxy, method, args) -> {
+                // LiveData queries run later on Room's executor, so there is nothing to time here
+                if (method.getDeclaringClass() == Object.class || LiveData.class.isAssignableFrom(method.getReturnType())) {
+                    return invoke(dao, method, args);
+                }
+                Metrics.Histogram timer = timers.computeIfAbsent(method,
+                    key -> Metrics.histogram("db." + key.getName()));
+                long start = System.nanoTime();
+                try {
+                    Object result = invoke(dao, method, args);
+                    // SQLite runs a cursor's query on first access; count it here so the time is real
+                    if (result instanceof Cursor) {
+                        ((Cursor) result).getCount();
+                    }
+                    return result;
+                } finally {
+                    timer.recordSince(start);
+                }
+            });
+    }
+
+    private static Object invoke(QRDao dao, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(dao, args);
+        } catch (InvocationTargetException e) {
+            errors.inc();
+            throw e.getCause();
+        }
+    }
+}
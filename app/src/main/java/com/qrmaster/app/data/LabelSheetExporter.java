@@ -0,0 +1,256 @@
+// LabelSheetExporter.java - Lays out qr_items as printable PDF label sheets
+package com.qrmaster.app.data;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.pdf.PdfDocument;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import com.google.zxing.WriterException;
+import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.utils.QRStyle;
+import com.qrmaster.app.utils.QRStyleRenderer;
+import com.qrmaster.app.utils.StructuredAppend;
+import com.qrmaster.app.utils.Symbol;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LabelSheetExporter {
+    // PDF page sizes are in points (1/72 inch)
+    public enum Paper {
+        A4(595, 842), LETTER(612, 792);
+
+        final int width;
+        final int height;
+
+        Paper(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public static class Layout {
+        public final String name;
+        final Paper paper;
+        final int columns;
+        final int rows;
+
+        Layout(String name, Paper paper, int columns, int rows) {
+            this.name = name;
+            this.paper = paper;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    public static final Layout[] LAYOUTS = {
+        new Layout("A4 - 3 × 7 labels", Paper.A4, 3, 7),
+        new Layout("A4 - 4 × 10 labels", Paper.A4, 4, 10),
+        new Layout("A4 - 2 × 4 large labels", Paper.A4, 2, 4),
+        new Layout("Letter - 3 × 10 labels", Paper.LETTER, 3, 10),
+        new Layout("Letter - 2 × 5 large labels", Paper.LETTER, 2, 5),
+    };
+
+    private static final float MARGIN = 28;
+    private static final float GUTTER = 8;
+    private static final float CAPTION_SIZE = 7;
+    private static final int CAPTION_LINES = 2;
+
+    // Where the rows come from - one keyset page at a time, in id order
+    private interface RowSource {
+        List<QRItem> next(int afterId, int limit);
+    }
+
+    // Second caption line under each code
+    private interface Caption {
+        String of(QRItem item);
+    }
+
+    private static final Caption ROW_CAPTION = item -> item.getType() + " #" + item.getId();
+
+    // One code on the sheet. A split set takes a label per part; symbol is null
+    // when the content is too long to encode.
+    private static class Label {
+        final QRItem item;
+        final Symbol symbol;
+        final String caption;
+
+        Label(QRItem item, Symbol symbol, String caption) {
+            this.item = item;
+            this.symbol = symbol;
+            this.caption = caption;
+        }
+    }
+
+    private final QRDao qrDao;
+
+    public LabelSheetExporter(QRDatabase database) {
+        this.qrDao = database.qrDao();
+    }
+
+    public long exportSaved(OutputStream out, Layout layout, HistoryBackup.ProgressListener listener)
+            throws IOException {
+        return export(out, layout, qrDao::getSavedPage, ROW_CAPTION, listener);
+    }
+
+    public long exportAll(OutputStream out, Layout layout, HistoryBackup.ProgressListener listener)
+            throws IOException {
+        return export(out, layout, qrDao::getPage, ROW_CAPTION, listener);
+    }
+
+    public long exportIds(OutputStream out, Layout layout, List<Integer> ids,
+                          HistoryBackup.ProgressListener listener) throws IOException {
+        List<Integer> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        return export(out, layout, (afterId, limit) -> {
+            int from = Collections.binarySearch(sorted, afterId + 1);
+            if (from < 0) from = -from - 1;
+            // Skip over chunks whose rows were all deleted since they were selected
+            while (from < sorted.size()) {
+                int to = Math.min(sorted.size(), from + Math.min(limit, QRDao.MAX_BIND_VARIABLES));
+                List<QRItem> page = qrDao.getItemsByIds(sorted.subList(from, to));
+                if (!page.isEmpty()) return page;
+                from = to;
+            }
+            return Collections.emptyList();
+        }, ROW_CAPTION, listener);
+    }
+
+    // One label per part of a split set, in scanning order. The parts never touch the database.
+    public static long exportParts(OutputStream out, Layout layout, String type, List<String> parts)
+            throws IOException {
+        List<QRItem> items = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            QRItem item = new QRItem(parts.get(i), type, System.currentTimeMillis());
+            item.setId(i + 1);
+            items.add(item);
+        }
+        return export(out, layout, (afterId, limit) ->
+                items.subList(Math.min(afterId, items.size()), Math.min(afterId + limit, items.size())),
+            item -> "Part " + item.getId() + " of " + parts.size(), null);
+    }
+
+    // Reads a page of rows at a time and finishes each PDF page before fetching more,
+    // so no more than about a sheet of labels is ever held. Codes are drawn as vector
+    // paths; PdfDocument keeps finished pages only as compact recorded drawing commands.
+    private static long export(OutputStream out, Layout layout, RowSource source, Caption caption,
+                               HistoryBackup.ProgressListener listener) throws IOException {
+        int perPage = layout.columns * layout.rows;
+        PdfDocument document = new PdfDocument();
+        try {
+            long labels = 0;
+            int lastId = 0;
+            int pageNumber = 0;
+            // Split sets can leave labels over for the next sheet
+            ArrayDeque<Label> pending = new ArrayDeque<>();
+            boolean exhausted = false;
+            while (true) {
+                while (!exhausted && pending.size() < perPage) {
+                    List<QRItem> items = source.next(lastId, perPage);
+                    if (items.isEmpty()) {
+                        exhausted = true;
+                    } else {
+                        lastId = items.get(items.size() - 1).getId();
+                        for (QRItem item : items) {
+                            addLabels(pending, item, caption);
+                        }
+                    }
+                }
+                if (pending.isEmpty()) break;
+
+                List<Label> sheet = new ArrayList<>(perPage);
+                while (sheet.size() < perPage && !pending.isEmpty()) {
+                    sheet.add(pending.poll());
+                }
+                pageNumber++;
+                PdfDocument.Page page = document.startPage(new PdfDocument.PageInfo.Builder(
+                    layout.paper.width, layout.paper.height, pageNumber).create());
+                drawSheet(page.getCanvas(), layout, sheet);
+                document.finishPage(page);
+
+                labels += sheet.size();
+                if (listener != null) {
+                    listener.onProgress(labels);
+                }
+            }
+            if (pageNumber == 0) {
+                // An empty PDF is not a valid document
+                document.finishPage(document.startPage(new PdfDocument.PageInfo.Builder(
+                    layout.paper.width, layout.paper.height, 1).create()));
+            }
+            document.writeTo(out);
+            return labels;
+        } finally {
+            document.close();
+        }
+    }
+
+    private static void addLabels(ArrayDeque<Label> labels, QRItem item, Caption caption) {
+        List<Symbol> symbols;
+        try {
+            symbols = StructuredAppend.encodeStored(item.getContent(), item.getType(), item.getFormat());
+        } catch (WriterException e) {
+            labels.add(new Label(item, null, caption.of(item)));
+            return;
+        }
+        for (int i = 0; i < symbols.size(); i++) {
+            labels.add(new Label(item, symbols.get(i), symbols.size() > 1
+                ? caption.of(item) + " - part " + (i + 1) + " of " + symbols.size()
+                : caption.of(item)));
+        }
+    }
+
+    private static void drawSheet(Canvas canvas, Layout layout, List<Label> labels) {
+        float cellWidth = (layout.paper.width - MARGIN * 2 - GUTTER * (layout.columns - 1)) / layout.columns;
+        float cellHeight = (layout.paper.height - MARGIN * 2 - GUTTER * (layout.rows - 1)) / layout.rows;
+        float captionHeight = CAPTION_SIZE * 1.3f * CAPTION_LINES;
+        float codeSize = Math.min(cellWidth, cellHeight - captionHeight);
+
+        TextPaint captionPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        captionPaint.setColor(Color.BLACK);
+        captionPaint.setTextSize(CAPTION_SIZE);
+        captionPaint.setTextAlign(Paint.Align.CENTER);
+
+        for (int i = 0; i < labels.size(); i++) {
+            Label label = labels.get(i);
+            QRItem item = label.item;
+            int column = i % layout.columns;
+            int row = i / layout.columns;
+            float left = MARGIN + column * (cellWidth + GUTTER);
+            float top = MARGIN + row * (cellHeight + GUTTER);
+            float centerX = left + cellWidth / 2;
+
+            float captionTop = top + codeSize;
+            if (label.symbol != null) {
+                int foreground = parseColor(item.getColorForeground(), Color.BLACK);
+                QRStyle style = QRStyle.PLAIN.withColors(foreground, foreground,
+                    parseColor(item.getColorBackground(), Color.WHITE));
+                QRStyleRenderer.drawUncached(canvas, label.symbol, style, centerX - codeSize / 2, top, codeSize);
+            } else {
+                canvas.drawText("Too long to encode", centerX, top + codeSize / 2, captionPaint);
+            }
+
+            String content = item.getContent();
+            // Only the start can fit on one caption line anyway
+            content = content.substring(0, Math.min(content.length(), 200)).replace('\n', ' ');
+            float lineHeight = CAPTION_SIZE * 1.3f;
+            canvas.drawText(TextUtils.ellipsize(content, captionPaint, cellWidth, TextUtils.TruncateAt.END).toString(),
+                centerX, captionTop + lineHeight, captionPaint);
+            canvas.drawText(TextUtils.ellipsize(label.caption, captionPaint, cellWidth,
+                TextUtils.TruncateAt.END).toString(), centerX, captionTop + lineHeight * 2, captionPaint);
+        }
+    }
+
+    private static int parseColor(String color, int fallback) {
+        try {
+            return color != null ? Color.parseColor(color) : fallback;
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
@@ -1,31 +1,163 @@
 // QRDao.java - Database Access
 package com.qrmaster.app.data;
 
+import android.database.Cursor;
 import androidx.lifecycle.LiveData;
 import androidx.room.*;
 import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.models.QRListItem;
 import java.util.List;
 
 @Dao
 public interface QRDao {
+    // SQLite's default SQLITE_MAX_VARIABLE_NUMBER is 999, keep headroom below it
+    int MAX_BIND_VARIABLES = 900;
+
+    // Columns for list rows - content is reduced to a prefix so long payloads stay out of the cursor window
+    String LIST_COLUMNS = "id, type, timestamp, isSaved, isGenerated, colorForeground, colorBackground, format, " +
+        "substr(content, 1, " + QRListItem.PREVIEW_LENGTH + ") AS contentPreview, " +
+        "length(content) AS contentLength";
+
     @Insert
     long insert(QRItem item);
 
+    @Insert
+    List<Long> insertAll(List<QRItem> items);
+
     @Update
     void update(QRItem item);
 
     @Delete
-    void delete(QRItem item);
+    int delete(QRItem item);
+
+    @Query("UPDATE qr_items SET isSaved = :saved WHERE id = :id")
+    int setSaved(int id, boolean saved);
+
+    @Query("UPDATE qr_items SET isSaved = :saved WHERE id IN (:ids)")
+    int setSavedForIds(List<Integer> ids, boolean saved);
+
+    // Applies a batch of coalesced favourite toggles in one transaction
+    @Transaction
+    default void applySaved(List<Integer> savedIds, List<Integer> unsavedIds) {
+        for (int start = 0; start < savedIds.size(); start += MAX_BIND_VARIABLES) {
+            setSavedForIds(savedIds.subList(start, Math.min(start + MAX_BIND_VARIABLES, savedIds.size())), true);
+        }
+        for (int start = 0; start < unsavedIds.size(); start += MAX_BIND_VARIABLES) {
+            setSavedForIds(unsavedIds.subList(start, Math.min(start + MAX_BIND_VARIABLES, unsavedIds.size())), false);
+        }
+    }
+
+    @Query("SELECT * FROM qr_items WHERE id = :id")
+    QRItem getItemById(int id);
+
+    @Query("SELECT " + LIST_COLUMNS + " FROM qr_items WHERE deletedAt = 0 ORDER BY timestamp DESC")
+    LiveData<List<QRListItem>> getAllItems();
+
+    @Query("SELECT " + LIST_COLUMNS + " FROM qr_items WHERE deletedAt = 0 ORDER BY timestamp DESC LIMIT :limit")
+    List<QRListItem> getRecentItems(int limit);
+
+    @Query("SELECT " + LIST_COLUMNS + " FROM qr_items WHERE isSaved = 1 AND deletedAt = 0 ORDER BY timestamp DESC")
+    LiveData<List<QRListItem>> getSavedItems();
+
+    // Answered from the (isSaved, deletedAt, timestamp) index alone
+    @Query("SELECT id FROM qr_items WHERE isSaved = 1 AND deletedAt = 0")
+    List<Integer> getSavedIds();
+
+    @Query("SELECT " + LIST_COLUMNS + " FROM qr_items WHERE type = :type AND deletedAt = 0 ORDER BY timestamp DESC")
+    LiveData<List<QRListItem>> getItemsByType(String type);
+
+    // Keyset page in id order - used by HistoryBackup to stream rows without loading the table
+    @Query("SELECT * FROM qr_items WHERE id > :afterId AND deletedAt = 0 ORDER BY id LIMIT :limit")
+    Cursor getPageCursor(int afterId, int limit);
+
+    // Keyset page of (id, contentHash) pairs for SeenIndex. Tombstones are included,
+    // since an undo can bring them back without another insert.
+    @Query("SELECT id, contentHash FROM qr_items WHERE id > :afterId ORDER BY id LIMIT :limit")
+    Cursor getHashPage(int afterId, int limit);
 
-    @Query("SELECT * FROM qr_items ORDER BY timestamp DESC")
-    LiveData<List<QRItem>> getAllItems();
+    @Query("SELECT COUNT(*) FROM qr_items")
+    int countRows();
 
-    @Query("SELECT * FROM qr_items WHERE isSaved = 1 ORDER BY timestamp DESC")
-    LiveData<List<QRItem>> getSavedItems();
+    // The hash narrows to a few rows through its index; content rules out collisions
+    @Query("SELECT EXISTS(SELECT 1 FROM qr_items WHERE contentHash = :contentHash AND content = :content AND deletedAt = 0)")
+    boolean containsContent(long contentHash, String content);
 
-    @Query("SELECT * FROM qr_items WHERE type = :type ORDER BY timestamp DESC")
-    LiveData<List<QRItem>> getItemsByType(String type);
+    // Keyset page of rows whose content matches a LIKE pattern (backslash escapes)
+    @Query("SELECT * FROM qr_items WHERE id > :afterId AND deletedAt = 0 AND content LIKE :pattern ESCAPE '\\' " +
+        "ORDER BY id LIMIT :limit")
+    Cursor searchPageCursor(int afterId, String pattern, int limit);
+
+    @Query("SELECT COUNT(*) FROM qr_items WHERE deletedAt = 0")
+    int countLive();
+
+    // Keyset pages of whole rows for PDF label sheets
+    @Query("SELECT * FROM qr_items WHERE id > :afterId AND deletedAt = 0 ORDER BY id LIMIT :limit")
+    List<QRItem> getPage(int afterId, int limit);
+
+    @Query("SELECT * FROM qr_items WHERE id > :afterId AND isSaved = 1 AND deletedAt = 0 ORDER BY id LIMIT :limit")
+    List<QRItem> getSavedPage(int afterId, int limit);
+
+    // Callers keep ids under MAX_BIND_VARIABLES
+    @Query("SELECT * FROM qr_items WHERE id IN (:ids) AND deletedAt = 0 ORDER BY id")
+    List<QRItem> getItemsByIds(List<Integer> ids);
+
+    // Set-based deletes - one statement each, returning the affected row count
+    @Query("DELETE FROM qr_items WHERE isSaved = 1")
+    int deleteAllSaved();
+
+    @Query("DELETE FROM qr_items WHERE type = :type")
+    int deleteByType(String type);
+
+    @Query("DELETE FROM qr_items WHERE timestamp < :cutoff")
+    int deleteOlderThan(long cutoff);
 
     @Query("DELETE FROM qr_items WHERE id IN (:ids)")
-    void deleteMultiple(List<Integer> ids);
+    int deleteByIds(List<Integer> ids);
+
+    // Bounded batches used by HistoryRetention so each write transaction stays short
+    @Query("DELETE FROM qr_items WHERE id IN (SELECT id FROM qr_items " +
+           "WHERE timestamp < :cutoff AND (:keepSaved = 0 OR isSaved = 0) LIMIT :limit)")
+    int deleteOlderThanBatch(long cutoff, boolean keepSaved, int limit);
+
+    @Query("DELETE FROM qr_items WHERE id IN (SELECT id FROM qr_items " +
+           "WHERE (:keepSaved = 0 OR isSaved = 0) ORDER BY timestamp ASC " +
+           "LIMIT MIN(:limit, MAX(0, (SELECT COUNT(*) FROM qr_items " +
+           "WHERE (:keepSaved = 0 OR isSaved = 0)) - :maxRows)))")
+    int deleteBeyondNewestBatch(int maxRows, boolean keepSaved, int limit);
+
+    // Soft delete - rows are hidden by setting a tombstone and purged later in batches.
+    // The tombstone value doubles as the undo token for the whole operation.
+    @Query("UPDATE qr_items SET deletedAt = :deletedAt WHERE id IN (:ids) AND deletedAt = 0")
+    int softDeleteByIds(List<Integer> ids, long deletedAt);
+
+    @Query("UPDATE qr_items SET deletedAt = :deletedAt WHERE isSaved = 1 AND deletedAt = 0")
+    int softDeleteAllSaved(long deletedAt);
+
+    @Query("UPDATE qr_items SET deletedAt = 0 WHERE deletedAt = :deletedAt")
+    int restoreDeleted(long deletedAt);
+
+    @Query("DELETE FROM qr_items WHERE id IN (SELECT id FROM qr_items " +
+           "WHERE deletedAt > 0 AND deletedAt < :cutoff LIMIT :limit)")
+    int purgeDeletedBatch(long cutoff, int limit);
+
+    @Transaction
+    default int softDeleteMultiple(List<Integer> ids, long deletedAt) {
+        int deleted = 0;
+        for (int start = 0; start < ids.size(); start += MAX_BIND_VARIABLES) {
+            int end = Math.min(start + MAX_BIND_VARIABLES, ids.size());
+            deleted += softDeleteByIds(ids.subList(start, end), deletedAt);
+        }
+        return deleted;
+    }
+
+    // Splits the id list so no single statement exceeds the bind variable limit
+    @Transaction
+    default int deleteMultiple(List<Integer> ids) {
+        int deleted = 0;
+        for (int start = 0; start < ids.size(); start += MAX_BIND_VARIABLES) {
+            int end = Math.min(start + MAX_BIND_VARIABLES, ids.size());
+            deleted += deleteByIds(ids.subList(start, end));
+        }
+        return deleted;
+    }
 }
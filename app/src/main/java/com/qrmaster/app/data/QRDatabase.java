@@ -2,25 +2,227 @@
 package com.qrmaster.app.data;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import com.qrmaster.app.StartupTrace;
 import com.qrmaster.app.models.QRItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-@Database(entities = {QRItem.class}, version = 1, exportSchema = false)
+@Database(entities = {QRItem.class}, version = 4, exportSchema = false)
 public abstract class QRDatabase extends RoomDatabase {
+    // WAL lets readers run alongside the single writer, so reads get a small
+    // pool while all writes are serialized on the scheduler's DB_WRITE lane
+    private static final int QUERY_THREADS = 3;
+    // Negative cache_size is in KiB
+    private static final int CACHE_SIZE_KIB = 4096;
+    // benchmark(): rows already in history, then a bulk scan's worth of inserts
+    private static final int BENCH_SEED_ROWS = 2000;
+    private static final int BENCH_BATCH_SIZE = 100;
+    private static final int BENCH_INSERT_BATCHES = 50;
+    private static final int BENCH_IDLE_READS = 50;
+    // About what the history list binds in its first screens
+    private static final int BENCH_READ_LIMIT = 200;
+
     private static QRDatabase instance;
-    
-    public abstract QRDao qrDao();
-    
+
+    // Adds the soft-delete tombstone and the indexes the list queries filter on
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE qr_items ADD COLUMN deletedAt INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_qr_items_deletedAt_timestamp " +
+                "ON qr_items (deletedAt, timestamp)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_qr_items_isSaved_deletedAt_timestamp " +
+                "ON qr_items (isSaved, deletedAt, timestamp)");
+        }
+    };
+
+    // Rows from before symbology selection were all QR codes
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE qr_items ADD COLUMN format TEXT NOT NULL DEFAULT 'QR_CODE'");
+        }
+    };
+
+    // Content hashes for the seen-before index, filled in for existing rows
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE qr_items ADD COLUMN contentHash INTEGER NOT NULL DEFAULT 0");
+            SupportSQLiteStatement update = db.compileStatement("UPDATE qr_items SET contentHash = ? WHERE id = ?");
+            try (Cursor cursor = db.query("SELECT id, content FROM qr_items")) {
+                while (cursor.moveToNext()) {
+                    update.bindLong(1, QRItem.hashContent(cursor.getString(1)));
+                    update.bindLong(2, cursor.getLong(0));
+                    update.executeUpdateDelete();
+                }
+            }
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_qr_items_contentHash ON qr_items (contentHash)");
+        }
+    };
+
+    // Room implements this one; callers get the timed wrapper from qrDao()
+    protected abstract QRDao roomDao();
+
+    private volatile QRDao timedDao;
+
+    public QRDao qrDao() {
+        QRDao dao = timedDao;
+        if (dao == null) {
+            synchronized (this) {
+                if (timedDao == null) {
+                    timedDao = InstrumentedDao.wrap(roomDao());
+                }
+                dao = timedDao;
+            }
+        }
+        return dao;
+    }
+
     public static synchronized QRDatabase getInstance(Context context) {
         if (instance == null) {
-            instance = Room.databaseBuilder(
+            instance = configure(Room.databaseBuilder(
                 context.getApplicationContext(),
                 QRDatabase.class,
                 "qr_database"
-            ).fallbackToDestructiveMigration().build();
+            ))
+                .setQueryExecutor(Executors.newFixedThreadPool(QUERY_THREADS, namedThreads("qr-db-read")))
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4)
+                .fallbackToDestructiveMigration()
+                .build();
         }
         return instance;
     }
+
+    // Journal mode, auto_vacuum and pragmas shared by the app database and the benchmark copy
+    private static Builder<QRDatabase> configure(Builder<QRDatabase> builder) {
+        return builder
+            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+            .openHelperFactory(new AutoVacuumOpenHelperFactory())
+            .addCallback(new Callback() {
+                @Override
+                public void onOpen(@NonNull SupportSQLiteDatabase db) {
+                    // NORMAL is durable in WAL mode short of power loss and avoids an fsync per commit
+                    db.execSQL("PRAGMA synchronous = NORMAL");
+                    db.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+                }
+            });
+    }
+
+    // List-screen reads while a bulk scan is inserting, under the old rollback journal and
+    // the WAL setup above. Each run uses its own scratch file, so history is untouched.
+    public static String benchmark(Context context) {
+        Context appContext = context.getApplicationContext();
+        StringBuilder out = new StringBuilder();
+        out.append(benchmarkRun(appContext, "rollback journal", "bench_journal.db",
+            Room.databaseBuilder(appContext, QRDatabase.class, "bench_journal.db")
+                .setJournalMode(JournalMode.TRUNCATE)));
+        out.append(benchmarkRun(appContext, "WAL", "bench_wal.db",
+            configure(Room.databaseBuilder(appContext, QRDatabase.class, "bench_wal.db"))));
+        return out.toString();
+    }
+
+    private static String benchmarkRun(Context context, String label, String name, Builder<QRDatabase> builder) {
+        context.deleteDatabase(name);
+        QRDatabase database = builder.build();
+        try {
+            // The Room DAO directly, so the app's db.* metrics only show real traffic
+            QRDao dao = database.roomDao();
+            for (int batch = 0; batch < BENCH_SEED_ROWS / BENCH_BATCH_SIZE; batch++) {
+                dao.insertAll(benchmarkBatch("seed", batch));
+            }
+            long[] idle = timeReads(dao, BENCH_IDLE_READS, null);
+
+            AtomicBoolean inserting = new AtomicBoolean(true);
+            long[] insertNanos = new long[1];
+            Thread writer = new Thread(() -> {
+                long start = SystemClock.elapsedRealtimeNanos();
+                try {
+                    // One transaction per batch, as bulk scan and backup import write
+                    for (int batch = 0; batch < BENCH_INSERT_BATCHES; batch++) {
+                        dao.insertAll(benchmarkBatch("bulk", batch));
+                    }
+                } finally {
+                    insertNanos[0] = SystemClock.elapsedRealtimeNanos() - start;
+                    inserting.set(false);
+                }
+            }, "qr-db-bench-writer");
+            writer.start();
+            long[] busy = timeReads(dao, 0, inserting);
+            writer.join();
+
+            int inserted = BENCH_INSERT_BATCHES * BENCH_BATCH_SIZE;
+            return String.format(Locale.US,
+                "%s\n  idle        %s\n  during bulk %s\n  inserted %d rows in %.0f ms\n",
+                label, readSummary(idle), readSummary(busy), inserted, insertNanos[0] / 1e6);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return label + ": interrupted\n";
+        } finally {
+            database.close();
+            context.deleteDatabase(name);
+        }
+    }
+
+    // A fixed number of reads, or as many as fit while inserting is still set
+    private static long[] timeReads(QRDao dao, int count, AtomicBoolean inserting) {
+        List<Long> samples = new ArrayList<>();
+        while (inserting != null ? inserting.get() : samples.size() < count) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            dao.getRecentItems(BENCH_READ_LIMIT);
+            samples.add(SystemClock.elapsedRealtimeNanos() - start);
+        }
+        long[] nanos = new long[samples.size()];
+        for (int i = 0; i < nanos.length; i++) nanos[i] = samples.get(i);
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static String readSummary(long[] sorted) {
+        if (sorted.length == 0) return "no reads";
+        return String.format(Locale.US, "%4d reads  p50 %6.2f ms  p99 %6.2f ms  max %6.2f ms",
+            sorted.length,
+            sorted[sorted.length / 2] / 1e6,
+            sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e6,
+            sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static List<QRItem> benchmarkBatch(String prefix, int batch) {
+        List<QRItem> items = new ArrayList<>(BENCH_BATCH_SIZE);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < BENCH_BATCH_SIZE; i++) {
+            items.add(new QRItem("https://example.com/" + prefix + "/" + batch + "/" + i, "URL", now + i));
+        }
+        return items;
+    }
+
+    // Opens the database file on a background thread so the first query from the UI doesn't pay for it
+    public static void preOpen(Context context) {
+        QRDatabase database = getInstance(context);
+        database.getQueryExecutor().execute(() -> {
+            long start = StartupTrace.begin("Room open");
+            database.getOpenHelper().getWritableDatabase();
+            StartupTrace.end("Room open", start);
+        });
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + "-" + count.incrementAndGet());
+    }
 }
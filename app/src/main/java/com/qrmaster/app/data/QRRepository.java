@@ -2,51 +2,287 @@
 package com.qrmaster.app.data;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
+import androidx.room.InvalidationTracker;
+import com.qrmaster.app.TaskScheduler;
 import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.models.QRListItem;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class QRRepository {
+    private static final String TAG = "QRRepository";
+    private static final int RECENT_LIMIT = 50;
+    private static final long SAVED_FLUSH_DELAY_MS = 300;
+    // Soft-deleted rows can be restored for this long before the purger removes them
+    public static final long UNDO_WINDOW_MS = 5000;
+    private static final int PURGE_BATCH_SIZE = 200;
+
     private QRDao qrDao;
-    private LiveData<List<QRItem>> allItems;
-    private LiveData<List<QRItem>> savedItems;
-    private ExecutorService executorService;
+    private LiveData<List<QRListItem>> allItems;
+    private LiveData<List<QRListItem>> savedItems;
+    // Room's read pool (see QRDatabase); writes go through write() to the DB_WRITE lane
+    private Executor readExecutor;
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Most recent rows, dropped whenever Room reports a write to qr_items
+    private volatile List<QRListItem> recentSnapshot;
+    private final AtomicInteger snapshotVersion = new AtomicInteger();
+    // Favourite toggles not yet written; main thread only
+    private final Map<Integer, Boolean> pendingSaved = new HashMap<>();
+    private boolean savedFlushScheduled;
+    private long lastDeleteToken;
+    private final SeenIndex seenIndex;
+
+    // Delivered on the main thread with the number of rows removed
+    public interface DeleteCallback {
+        void onDeleted(int count);
+    }
+
+    public interface ListCallback {
+        void onItems(List<QRListItem> items);
+    }
+
+    public interface IdsCallback {
+        void onIds(List<Integer> ids);
+    }
+
+    // Delivered on the main thread; item is null if the row no longer exists
+    public interface ItemCallback {
+        void onItem(QRItem item);
+    }
+
+    // Delivered on the main thread; rows that no longer exist are left out
+    public interface ItemsCallback {
+        void onItems(List<QRItem> items);
+    }
 
     public QRRepository(Application application) {
         QRDatabase database = QRDatabase.getInstance(application);
         qrDao = database.qrDao();
         allItems = qrDao.getAllItems();
         savedItems = qrDao.getSavedItems();
-        executorService = Executors.newSingleThreadExecutor();
+        readExecutor = database.getQueryExecutor();
+        seenIndex = SeenIndex.get(database);
+        seenIndex.rebuild();
+
+        database.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("qr_items") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                snapshotVersion.incrementAndGet();
+                recentSnapshot = null;
+            }
+        });
+
+        // Clear tombstones left over from a previous run
+        schedulePurge();
     }
 
     public void insert(QRItem item) {
-        executorService.execute(() -> qrDao.insert(item));
+        write(() -> {
+            qrDao.insert(item);
+            seenIndex.add(item.getContentHash());
+        });
     }
 
     public void update(QRItem item) {
-        executorService.execute(() -> qrDao.update(item));
+        write(() -> {
+            qrDao.update(item);
+            seenIndex.add(item.getContentHash());
+        });
     }
 
     public void delete(QRItem item) {
-        executorService.execute(() -> qrDao.delete(item));
+        write(() -> seenIndex.noteRemoved(qrDao.delete(item)));
+    }
+
+    public void setSaved(int id, boolean saved) {
+        write(() -> qrDao.setSaved(id, saved));
+    }
+
+    // Optimistic favourite toggle. The new value is visible through getPendingSaved
+    // right away; toggles arriving within the flush window are written together.
+    public void toggleSaved(int id, boolean saved) {
+        pendingSaved.put(id, saved);
+        if (!savedFlushScheduled) {
+            savedFlushScheduled = true;
+            mainHandler.postDelayed(this::flushPendingSaved, SAVED_FLUSH_DELAY_MS);
+        }
+    }
+
+    // Null when the row has no unwritten toggle
+    public Boolean getPendingSaved(int id) {
+        return pendingSaved.get(id);
+    }
+
+    private void flushPendingSaved() {
+        savedFlushScheduled = false;
+        Map<Integer, Boolean> batch = new HashMap<>(pendingSaved);
+        List<Integer> savedIds = new ArrayList<>();
+        List<Integer> unsavedIds = new ArrayList<>();
+        for (Map.Entry<Integer, Boolean> entry : batch.entrySet()) {
+            (entry.getValue() ? savedIds : unsavedIds).add(entry.getKey());
+        }
+
+        boolean queued = write(() -> {
+            qrDao.applySaved(savedIds, unsavedIds);
+            mainHandler.post(() -> {
+                // Keep entries that were toggled again while this batch was in flight
+                for (Map.Entry<Integer, Boolean> entry : batch.entrySet()) {
+                    pendingSaved.remove(entry.getKey(), entry.getValue());
+                }
+            });
+        });
+        if (!queued && !savedFlushScheduled) {
+            // The toggles are still pending, so the next flush writes them
+            savedFlushScheduled = true;
+            mainHandler.postDelayed(this::flushPendingSaved, SAVED_FLUSH_DELAY_MS);
+        }
+    }
+
+    public void getItemById(int id, ItemCallback callback) {
+        readExecutor.execute(() -> {
+            QRItem item = qrDao.getItemById(id);
+            mainHandler.post(() -> callback.onItem(item));
+        });
+    }
+
+    // One query for many rows, e.g. the full content behind a screenful of list rows
+    public void getItemsByIds(List<Integer> ids, ItemsCallback callback) {
+        readExecutor.execute(() -> {
+            List<QRItem> items = qrDao.getItemsByIds(ids);
+            mainHandler.post(() -> callback.onItems(items));
+        });
+    }
+
+    public void getSavedIds(IdsCallback callback) {
+        readExecutor.execute(() -> {
+            List<Integer> ids = qrDao.getSavedIds();
+            mainHandler.post(() -> callback.onIds(ids));
+        });
+    }
+
+    // Answers from the in-memory snapshot when it is still valid, otherwise
+    // reloads it on the read pool. Call from the main thread.
+    public void getRecentItems(ListCallback callback) {
+        List<QRListItem> snapshot = recentSnapshot;
+        if (snapshot != null) {
+            callback.onItems(snapshot);
+            return;
+        }
+
+        int version = snapshotVersion.get();
+        readExecutor.execute(() -> {
+            List<QRListItem> items = Collections.unmodifiableList(qrDao.getRecentItems(RECENT_LIMIT));
+            // A write that landed while loading makes this result stale, so don't cache it
+            if (snapshotVersion.get() == version) {
+                recentSnapshot = items;
+            }
+            mainHandler.post(() -> callback.onItems(items));
+        });
+    }
+
+    // Null while the seen-before index is still building; false means definitely not in history
+    public Boolean mightHaveSeen(String content) {
+        return seenIndex.mightContain(content);
+    }
+
+    public void checkSeen(String content, SeenIndex.Callback callback) {
+        seenIndex.check(content, callback);
     }
 
     public void deleteMultiple(List<Integer> ids) {
-        executorService.execute(() -> qrDao.deleteMultiple(ids));
+        deleteMultiple(ids, null);
+    }
+
+    public void deleteMultiple(List<Integer> ids, DeleteCallback callback) {
+        write(() -> postDeleted(qrDao.deleteMultiple(ids), callback));
+    }
+
+    public void deleteAllSaved(DeleteCallback callback) {
+        write(() -> postDeleted(qrDao.deleteAllSaved(), callback));
+    }
+
+    public void deleteByType(String type, DeleteCallback callback) {
+        write(() -> postDeleted(qrDao.deleteByType(type), callback));
+    }
+
+    public void deleteOlderThan(long cutoff, DeleteCallback callback) {
+        write(() -> postDeleted(qrDao.deleteOlderThan(cutoff), callback));
+    }
+
+    // Hides the rows at once and returns an undo token for restoreDeleted
+    public long softDeleteMultiple(List<Integer> ids, DeleteCallback callback) {
+        long token = nextDeleteToken();
+        write(() -> postDeleted(qrDao.softDeleteMultiple(ids, token), callback));
+        schedulePurge();
+        return token;
+    }
+
+    public long softDeleteAllSaved(DeleteCallback callback) {
+        long token = nextDeleteToken();
+        write(() -> postDeleted(qrDao.softDeleteAllSaved(token), callback));
+        schedulePurge();
+        return token;
+    }
+
+    public void restoreDeleted(long token) {
+        write(() -> qrDao.restoreDeleted(token));
+    }
+
+    // Tokens must be unique per operation so undo restores exactly one delete
+    private synchronized long nextDeleteToken() {
+        lastDeleteToken = Math.max(lastDeleteToken + 1, System.currentTimeMillis());
+        return lastDeleteToken;
+    }
+
+    // Hard-deletes expired tombstones in small batches on the maintenance lane,
+    // so no single write transaction is long enough to stall the UI
+    private void schedulePurge() {
+        mainHandler.postDelayed(() -> TaskScheduler.get().execute(TaskScheduler.Lane.MAINTENANCE, () -> {
+            long cutoff = System.currentTimeMillis() - UNDO_WINDOW_MS;
+            int purged;
+            do {
+                purged = qrDao.purgeDeletedBatch(cutoff, PURGE_BATCH_SIZE);
+            } while (purged == PURGE_BATCH_SIZE);
+        }), UNDO_WINDOW_MS + 500);
+    }
+
+    // All repository writes run in submission order on the single DB_WRITE thread.
+    // Returns false if the lane stayed full; the write is lost and logged.
+    private boolean write(Runnable task) {
+        boolean queued = TaskScheduler.get().execute(TaskScheduler.Lane.DB_WRITE, task);
+        if (!queued) {
+            Log.w(TAG, "Write lane full, database write dropped");
+        }
+        return queued;
+    }
+
+    private void postDeleted(int count, DeleteCallback callback) {
+        seenIndex.noteRemoved(count);
+        if (callback != null) {
+            mainHandler.post(() -> callback.onDeleted(count));
+        }
     }
 
-    public LiveData<List<QRItem>> getAllItems() {
+    public LiveData<List<QRListItem>> getAllItems() {
         return allItems;
     }
 
-    public LiveData<List<QRItem>> getSavedItems() {
+    public LiveData<List<QRListItem>> getSavedItems() {
         return savedItems;
     }
 
-    public LiveData<List<QRItem>> getItemsByType(String type) {
+    public LiveData<List<QRListItem>> getItemsByType(String type) {
         return qrDao.getItemsByType(type);
     }
 }
\ No newline at end of file
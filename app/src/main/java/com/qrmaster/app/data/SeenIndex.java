@@ -0,0 +1,235 @@
+// SeenIndex.java - In-memory "seen before" filter over the content hashes in history
+package com.qrmaster.app.data;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import com.qrmaster.app.TaskScheduler;
+import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.utils.Metrics;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A Bloom filter answers "definitely new" without touching the database; a
+// positive is confirmed by the indexed contentHash lookup, so false positives
+// cost one query and never show up as a wrong answer.
+public final class SeenIndex {
+    // About 1% false positives at the design load
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int PROBES = 7;
+    private static final int MIN_BITS = 1 << 13;
+    // Sized for twice the current rows, so normal growth doesn't force a rebuild
+    private static final int GROWTH = 2;
+    private static final int BUILD_PAGE_SIZE = 2000;
+    // Bloom filters can't forget; once this share of the entries is gone, rebuild
+    private static final float STALE_FRACTION = 0.25f;
+
+    private static SeenIndex instance;
+
+    private static final AtomicLong lookups = new AtomicLong();
+    private static final AtomicLong definitelyNew = new AtomicLong();
+    private static final AtomicLong confirmedSeen = new AtomicLong();
+    private static final AtomicLong falsePositives = new AtomicLong();
+    private static final AtomicLong builds = new AtomicLong();
+    private static volatile long lastBuildMs;
+
+    private final QRDao qrDao;
+    private final Executor readExecutor;
+    // Null until the first build finishes
+    private volatile Filter filter;
+    // The filter being built, so inserts during a rebuild aren't lost
+    private volatile Filter building;
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+
+    // Delivered on the main thread
+    public interface Callback {
+        void onResult(boolean seen);
+    }
+
+    private SeenIndex(QRDatabase database) {
+        this.qrDao = database.qrDao();
+        this.readExecutor = database.getQueryExecutor();
+        Metrics.gauge("seen_index.entries", () -> {
+            Filter current = filter;
+            return current != null ? current.added.get() - current.removed.get() : 0;
+        });
+    }
+
+    public static synchronized SeenIndex get(QRDatabase database) {
+        if (instance == null) {
+            instance = new SeenIndex(database);
+        }
+        return instance;
+    }
+
+    // Streams ids and hashes on the maintenance lane; the old filter keeps answering meanwhile
+    public void rebuild() {
+        if (!rebuildQueued.compareAndSet(false, true)) return;
+        if (!TaskScheduler.get().execute(TaskScheduler.Lane.MAINTENANCE, this::build)) {
+            rebuildQueued.set(false);
+        }
+    }
+
+    // A failed build clears the queued flag too, so the next lookup can retry it
+    private void build() {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            Filter next = new Filter(bitsFor(qrDao.countRows()));
+            // Set before the first page is read: rows committed earlier are in the
+            // pages, rows committed later reach next through add()
+            building = next;
+            int lastId = 0;
+            int count;
+            do {
+                count = 0;
+                try (Cursor cursor = qrDao.getHashPage(lastId, BUILD_PAGE_SIZE)) {
+                    while (cursor.moveToNext()) {
+                        lastId = cursor.getInt(0);
+                        next.add(cursor.getLong(1));
+                        count++;
+                    }
+                }
+            } while (count == BUILD_PAGE_SIZE);
+
+            filter = next;
+            builds.incrementAndGet();
+            lastBuildMs = SystemClock.elapsedRealtime() - start;
+        } finally {
+            building = null;
+            rebuildQueued.set(false);
+        }
+    }
+
+    private static int bitsFor(int rows) {
+        long wanted = Math.max(MIN_BITS, (long) rows * GROWTH * BITS_PER_ENTRY);
+        // Power of two so probes can mask instead of divide
+        return (int) Math.min(1 << 30, Long.highestOneBit(wanted - 1) << 1);
+    }
+
+    // Call after the row is committed
+    public void add(long contentHash) {
+        // building first: if it is already cleared, filter is the finished one
+        Filter pending = building;
+        Filter current = filter;
+        if (current != null) {
+            current.add(contentHash);
+            if (current.isOverloaded()) rebuild();
+        }
+        if (pending != null && pending != current) {
+            pending.add(contentHash);
+        }
+    }
+
+    // Removed rows stay in the filter as false positives until the next rebuild
+    public void noteRemoved(int rows) {
+        Filter current = filter;
+        if (rows > 0 && current != null && current.removed.addAndGet(rows) > current.added.get() * STALE_FRACTION) {
+            rebuild();
+        }
+    }
+
+    // Null while the first build is still running; false means definitely not in history
+    public Boolean mightContain(String content) {
+        Filter current = filter;
+        if (current == null) {
+            // The startup build may have been dropped by a full maintenance lane; queue
+            // it again (a no-op while one is pending) so the filter doesn't stay unbuilt
+            rebuild();
+            return null;
+        }
+        lookups.incrementAndGet();
+        boolean maybe = current.mightContain(QRItem.hashContent(content));
+        if (!maybe) definitelyNew.incrementAndGet();
+        return maybe;
+    }
+
+    // Answers negatives at once; positives (or an unbuilt filter) go to the index lookup
+    public void check(String content, Callback callback) {
+        Boolean maybe = mightContain(content);
+        if (Boolean.FALSE.equals(maybe)) {
+            callback.onResult(false);
+            return;
+        }
+        long hash = QRItem.hashContent(content);
+        readExecutor.execute(() -> {
+            boolean seen = qrDao.containsContent(hash, content);
+            if (maybe != null) {
+                (seen ? confirmedSeen : falsePositives).incrementAndGet();
+            }
+            TaskScheduler.get().postToMain(() -> callback.onResult(seen));
+        });
+    }
+
+    public static String dumpStats() {
+        SeenIndex index = instance;
+        Filter current = index != null ? index.filter : null;
+        if (current == null) return "not built yet\n";
+        long total = Math.max(1, lookups.get());
+        return String.format(Locale.US,
+            "entries %d (removed %d), %d KiB, built %d times, last %d ms\n"
+                + "  lookups %d, definitely new %.1f%%, confirmed %d, false positives %d\n",
+            current.added.get(), current.removed.get(), current.bits.length() / 128,
+            builds.get(), lastBuildMs,
+            lookups.get(), definitelyNew.get() * 100.0 / total, confirmedSeen.get(), falsePositives.get());
+    }
+
+    // Bit words are set with CAS, so the write lane and a rebuild can add concurrently
+    private static class Filter {
+        final AtomicLongArray bits;
+        final int mask;
+        final int capacity;
+        final AtomicInteger added = new AtomicInteger();
+        final AtomicInteger removed = new AtomicInteger();
+
+        Filter(int bitCount) {
+            bits = new AtomicLongArray(bitCount / 64);
+            mask = bitCount - 1;
+            capacity = bitCount / BITS_PER_ENTRY;
+        }
+
+        void add(long hash) {
+            long mixed = mix(hash);
+            int h1 = (int) mixed;
+            int h2 = (int) (mixed >>> 32) | 1;
+            for (int i = 0; i < PROBES; i++) {
+                int bit = (h1 + i * h2) & mask;
+                int word = bit >>> 6;
+                long flag = 1L << bit;
+                long current;
+                while (((current = bits.get(word)) & flag) == 0
+                        && !bits.compareAndSet(word, current, current | flag)) {
+                    // retry
+                }
+            }
+            added.incrementAndGet();
+        }
+
+        boolean mightContain(long hash) {
+            long mixed = mix(hash);
+            int h1 = (int) mixed;
+            int h2 = (int) (mixed >>> 32) | 1;
+            for (int i = 0; i < PROBES; i++) {
+                int bit = (h1 + i * h2) & mask;
+                if ((bits.get(bit >>> 6) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        boolean isOverloaded() {
+            return added.get() > capacity;
+        }
+
+        // FNV's low bits are weak, and the probes use them directly
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
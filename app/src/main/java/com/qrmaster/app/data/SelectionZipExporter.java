@@ -0,0 +1,200 @@
+// SelectionZipExporter.java - Streams rendered codes and a manifest for a set of ids into one ZIP
+package com.qrmaster.app.data;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Process;
+import com.google.zxing.WriterException;
+import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.utils.QRStyle;
+import com.qrmaster.app.utils.QRStyleRenderer;
+import com.qrmaster.app.utils.StructuredAppend;
+import com.qrmaster.app.utils.Symbol;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class SelectionZipExporter {
+    private static final int IMAGE_SIZE = 512;
+    private static final int RENDER_THREADS = 2;
+    // Rendered-but-unwritten images; bounds memory to a few PNGs however many ids there are
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final int FETCH_CHUNK = 50;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    // One image per code; a split set has one per part, and an item too long to encode none
+    private static class Rendered {
+        final List<String> names;
+        final List<byte[]> pngs;
+        final String manifestLine;
+
+        Rendered(List<String> names, List<byte[]> pngs, String manifestLine) {
+            this.names = names;
+            this.pngs = pngs;
+            this.manifestLine = manifestLine;
+        }
+    }
+
+    private final QRDao qrDao;
+
+    public SelectionZipExporter(QRDatabase database) {
+        this.qrDao = database.qrDao();
+    }
+
+    // Images are rendered on a small pool and written in id order as they complete.
+    // Returns the number of images written.
+    public long export(List<Integer> ids, File zipFile, HistoryBackup.ProgressListener listener)
+            throws IOException {
+        List<Integer> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(RENDER_THREADS, runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "qr-zip-render-" + threadCount.incrementAndGet()));
+
+        StringBuilder manifest = new StringBuilder();
+        ArrayDeque<Future<Rendered>> inFlight = new ArrayDeque<>();
+        long written = 0;
+        try (ZipOutputStream zip = new ZipOutputStream(
+                new BufferedOutputStream(new FileOutputStream(zipFile), STREAM_BUFFER_SIZE))) {
+            for (int from = 0; from < sorted.size(); from += FETCH_CHUNK) {
+                List<QRItem> items = qrDao.getItemsByIds(sorted.subList(from, Math.min(sorted.size(), from + FETCH_CHUNK)));
+                for (QRItem item : items) {
+                    if (inFlight.size() >= MAX_IN_FLIGHT) {
+                        written += writeNext(zip, inFlight, manifest);
+                        if (listener != null) listener.onProgress(written);
+                    }
+                    inFlight.add(pool.submit(() -> render(item)));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                written += writeNext(zip, inFlight, manifest);
+                if (listener != null) listener.onProgress(written);
+            }
+
+            zip.putNextEntry(new ZipEntry("manifest.jsonl"));
+            zip.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        } finally {
+            for (Future<Rendered> future : inFlight) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+        return written;
+    }
+
+    // Returns the number of images written for the item; 0 if it could not be encoded
+    private int writeNext(ZipOutputStream zip, ArrayDeque<Future<Rendered>> inFlight,
+                          StringBuilder manifest) throws IOException {
+        Rendered rendered;
+        try {
+            rendered = inFlight.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("ZIP export interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Rendering failed", e.getCause());
+        }
+        manifest.append(rendered.manifestLine).append('\n');
+        for (int i = 0; i < rendered.pngs.size(); i++) {
+            byte[] png = rendered.pngs.get(i);
+            // PNG is already compressed, so store it rather than deflate it again
+            ZipEntry entry = new ZipEntry(rendered.names.get(i));
+            CRC32 crc = new CRC32();
+            crc.update(png);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(png.length);
+            entry.setCompressedSize(png.length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(png);
+            zip.closeEntry();
+        }
+        return rendered.pngs.size();
+    }
+
+    // Bitmaps live only inside this call; what stays queued is the encoded PNGs
+    private static Rendered render(QRItem item) {
+        List<Symbol> symbols;
+        try {
+            symbols = StructuredAppend.encodeStored(item.getContent(), item.getType(), item.getFormat());
+        } catch (WriterException e) {
+            return new Rendered(Collections.emptyList(), Collections.emptyList(),
+                manifestLine(item, Collections.emptyList()));
+        }
+        int foreground = parseColor(item.getColorForeground(), Color.BLACK);
+        QRStyle style = QRStyle.PLAIN.withColors(foreground, foreground,
+            parseColor(item.getColorBackground(), Color.WHITE));
+
+        List<String> names = new ArrayList<>(symbols.size());
+        List<byte[]> pngs = new ArrayList<>(symbols.size());
+        for (int i = 0; i < symbols.size(); i++) {
+            // Parts sort in scanning order next to each other
+            names.add(symbols.size() > 1
+                ? String.format(Locale.US, "qr_%05d_part%02d.png", item.getId(), i + 1)
+                : String.format(Locale.US, "qr_%05d.png", item.getId()));
+            Bitmap bitmap = Bitmap.createBitmap(IMAGE_SIZE, IMAGE_SIZE, Bitmap.Config.ARGB_8888);
+            QRStyleRenderer.drawUncached(new Canvas(bitmap), symbols.get(i), style, 0, 0, IMAGE_SIZE);
+            ByteArrayOutputStream png = new ByteArrayOutputStream(16 * 1024);
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+            bitmap.recycle();
+            pngs.add(png.toByteArray());
+        }
+        return new Rendered(names, pngs, manifestLine(item, names));
+    }
+
+    // "image" is null when the item couldn't be encoded; a split set also lists every "parts" image
+    private static String manifestLine(QRItem item, List<String> images) {
+        try {
+            JSONObject line = new JSONObject()
+                .put("id", item.getId())
+                .put("image", images.isEmpty() ? JSONObject.NULL : images.get(0));
+            if (images.size() > 1) {
+                line.put("parts", new JSONArray(images));
+            }
+            return line
+                .put("type", item.getType())
+                .put("format", item.getFormat())
+                .put("content", item.getContent())
+                .put("timestamp", item.getTimestamp())
+                .put("colorForeground", item.getColorForeground())
+                .put("colorBackground", item.getColorBackground())
+                .toString();
+        } catch (JSONException e) {
+            // Only thrown for non-finite numbers, which no field here can be
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int parseColor(String color, int fallback) {
+        try {
+            return color != null ? Color.parseColor(color) : fallback;
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
@@ -1,57 +1,125 @@
-// CreateFragment.java - Enhanced with type-specific fields and preview dialog
+// CreateFragment.java - Type-specific fields with a live preview and preview dialog
 package com.qrmaster.app.fragments;
 
 import android.Manifest;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
-import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.viewpager2.widget.ViewPager2;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.google.android.material.progressindicator.LinearProgressIndicator;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
 import com.qrmaster.app.R;
+import com.qrmaster.app.TaskScheduler;
+import com.qrmaster.app.adapters.CodePagerAdapter;
+import com.qrmaster.app.data.LabelSheetExporter;
 import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.utils.QREncoder;
+import com.qrmaster.app.utils.QRStyle;
+import com.qrmaster.app.utils.QRStyleRenderer;
+import com.qrmaster.app.utils.StructuredAppend;
+import com.qrmaster.app.utils.Symbol;
+import com.qrmaster.app.utils.SymbolEncoder;
+import com.qrmaster.app.utils.SymbologyRegistry;
 import com.qrmaster.app.viewmodels.QRViewModel;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CreateFragment extends Fragment {
     private static final int STORAGE_PERMISSION_CODE = 101;
+    // Typing faster than this only re-renders once the user pauses
+    private static final long PREVIEW_DEBOUNCE_MS = 250;
+    private static final int QR_SIZE = 512;
+    private static final int LOGO_SIZE = 256;
+    private static final String[] COLOR_NAMES = {"Black", "Navy", "Blue", "Teal", "Green", "Purple", "Red", "Orange", "White"};
+    private static final String[] COLOR_VALUES = {"#000000", "#1A237E", "#1565C0", "#00695C", "#2E7D32", "#6A1B9A", "#C62828", "#E65100", "#FFFFFF"};
     
     private AutoCompleteTextView typeSpinner;
     private LinearLayout dynamicFieldsContainer;
-    private View colorForeground, colorBackground;
+    private View colorForeground, colorGradient, colorBackground;
+    private AutoCompleteTextView formatSpinner, moduleStyleSpinner, finderStyleSpinner;
+    private MaterialButton btnLogo;
     private MaterialButton btnGenerate, btnSave;
+    private ViewPager2 livePreview;
+    private CodePagerAdapter livePreviewPages;
+    private TextView capacityText;
+    private LinearProgressIndicator capacityMeter;
     private QRViewModel viewModel;
-    private Bitmap currentQRBitmap;
+    // One bitmap per code; several when the payload was split
+    private List<Bitmap> currentBitmaps = Collections.emptyList();
+    private List<String> currentParts = Collections.emptyList();
     private String currentFgColor = "#000000";
     private String currentBgColor = "#FFFFFF";
+    // Null for a solid foreground
+    private String currentGradientColor;
+    private QRStyle style = QRStyle.PLAIN;
     private String currentContent = "";
+    // Null lets SymbologyRegistry pick the smallest symbol
+    private BarcodeFormat selectedFormat = BarcodeFormat.QR_CODE;
+    // What the current preview was actually encoded as
+    private BarcodeFormat currentFormat = BarcodeFormat.QR_CODE;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Bumped for every new input; a render whose generation is stale is abandoned
+    private final AtomicInteger previewGeneration = new AtomicInteger();
+    private final Runnable previewRunnable = () -> renderPreview(false);
+    private final ActivityResultLauncher<String> logoLauncher = registerForActivityResult(
+        new ActivityResultContracts.GetContent(), this::loadLogo);
+    private final ActivityResultLauncher<String> partsSheetLauncher = registerForActivityResult(
+        new ActivityResultContracts.CreateDocument("application/pdf"), this::exportPartsSheet);
+
+    private final TextWatcher previewWatcher = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            schedulePreview();
+        }
+    };
 
     @Nullable
     @Override
@@ -61,13 +129,25 @@ public class CreateFragment extends Fragment {
         typeSpinner = view.findViewById(R.id.qr_type_spinner);
         dynamicFieldsContainer = view.findViewById(R.id.dynamic_fields_container);
         colorForeground = view.findViewById(R.id.color_foreground);
+        colorGradient = view.findViewById(R.id.color_gradient);
         colorBackground = view.findViewById(R.id.color_background);
+        formatSpinner = view.findViewById(R.id.format_spinner);
+        moduleStyleSpinner = view.findViewById(R.id.module_style_spinner);
+        finderStyleSpinner = view.findViewById(R.id.finder_style_spinner);
+        btnLogo = view.findViewById(R.id.btn_logo);
         btnGenerate = view.findViewById(R.id.btn_generate);
         btnSave = view.findViewById(R.id.btn_save);
+        livePreview = view.findViewById(R.id.qr_live_preview);
+        livePreviewPages = new CodePagerAdapter();
+        livePreview.setAdapter(livePreviewPages);
+        capacityText = view.findViewById(R.id.qr_capacity_text);
+        capacityMeter = view.findViewById(R.id.qr_capacity_meter);
         
-        viewModel = new ViewModelProvider(this).get(QRViewModel.class);
+        viewModel = new ViewModelProvider(requireActivity()).get(QRViewModel.class);
 
         setupTypeSpinner();
+        setupFormatSpinner();
+        setupStyleControls();
         setupClickListeners();
         
         // Default to Text type
@@ -76,6 +156,13 @@ public class CreateFragment extends Fragment {
         return view;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mainHandler.removeCallbacks(previewRunnable);
+        previewGeneration.incrementAndGet();
+    }
+
     private void setupTypeSpinner() {
         String[] types = {"Text", "URL", "WiFi", "Contact", "Email", "Phone", "SMS", "Payment"};
         ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(), 
@@ -86,6 +173,7 @@ public class CreateFragment extends Fragment {
         typeSpinner.setOnItemClickListener((parent, view, position, id) -> {
             String selectedType = types[position];
             updateFieldsForType(selectedType);
+            schedulePreview();
         });
     }
 
@@ -145,6 +233,7 @@ public class CreateFragment extends Fragment {
         layout.setLayoutParams(params);
         
         TextInputEditText editText = new TextInputEditText(layout.getContext());
+        editText.addTextChangedListener(previewWatcher);
         layout.addView(editText);
         
         dynamicFieldsContainer.addView(layout);
@@ -170,6 +259,7 @@ public class CreateFragment extends Fragment {
         dropdown.setAdapter(adapter);
         dropdown.setText("WPA2", false);
         dropdown.setInputType(0);
+        dropdown.addTextChangedListener(previewWatcher);
         
         layout.addView(dropdown);
         dynamicFieldsContainer.addView(layout);
@@ -179,34 +269,284 @@ public class CreateFragment extends Fragment {
         btnGenerate.setOnClickListener(v -> generateQR());
         btnSave.setOnClickListener(v -> saveToGallery());
         
-        colorForeground.setOnClickListener(v -> {
-            Toast.makeText(requireContext(), "Color picker coming soon", Toast.LENGTH_SHORT).show();
-        });
+        colorForeground.setOnClickListener(v -> pickColor("Foreground", false, color -> {
+            currentFgColor = color;
+            applyColors();
+        }));
         
-        colorBackground.setOnClickListener(v -> {
-            Toast.makeText(requireContext(), "Color picker coming soon", Toast.LENGTH_SHORT).show();
+        colorGradient.setOnClickListener(v -> pickColor("Gradient", true, color -> {
+            currentGradientColor = color;
+            applyColors();
+        }));
+        
+        colorBackground.setOnClickListener(v -> pickColor("Background", false, color -> {
+            currentBgColor = color;
+            applyColors();
+        }));
+
+        btnLogo.setOnClickListener(v -> {
+            if (style.hasLogo()) {
+                style = style.withLogo(null);
+                btnLogo.setText("Add Logo");
+                schedulePreview();
+            } else {
+                logoLauncher.launch("image/*");
+            }
+        });
+    }
+
+    private interface ColorCallback {
+        void onColor(String color);
+    }
+
+    // Gradient offers "None" first, which reports a null colour
+    private void pickColor(String title, boolean allowNone, ColorCallback callback) {
+        String[] names = COLOR_NAMES;
+        if (allowNone) {
+            names = new String[COLOR_NAMES.length + 1];
+            names[0] = "None";
+            System.arraycopy(COLOR_NAMES, 0, names, 1, COLOR_NAMES.length);
+        }
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle(title)
+            .setItems(names, (dialog, which) -> {
+                int index = allowNone ? which - 1 : which;
+                callback.onColor(index < 0 ? null : COLOR_VALUES[index]);
+            })
+            .show();
+    }
+
+    // QR stays the default since every phone camera reads it; the others are opt-in
+    private void setupFormatSpinner() {
+        List<BarcodeFormat> formats = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        formats.add(BarcodeFormat.QR_CODE);
+        names.add(SymbologyRegistry.displayName(BarcodeFormat.QR_CODE));
+        formats.add(null);
+        names.add("Auto (smallest)");
+        for (SymbolEncoder encoder : SymbologyRegistry.all()) {
+            if (encoder.format() != BarcodeFormat.QR_CODE) {
+                formats.add(encoder.format());
+                names.add(encoder.displayName());
+            }
+        }
+        formatSpinner.setAdapter(new ArrayAdapter<>(requireContext(),
+            android.R.layout.simple_dropdown_item_1line, names));
+        formatSpinner.setText(names.get(formats.indexOf(selectedFormat)), false);
+        formatSpinner.setOnItemClickListener((parent, view, position, id) -> {
+            selectedFormat = formats.get(position);
+            schedulePreview();
+        });
+    }
+
+    private void setupStyleControls() {
+        String[] moduleNames = {"Square", "Rounded", "Dots"};
+        String[] finderNames = {"Square", "Rounded", "Circle"};
+        moduleStyleSpinner.setAdapter(new ArrayAdapter<>(requireContext(),
+            android.R.layout.simple_dropdown_item_1line, moduleNames));
+        finderStyleSpinner.setAdapter(new ArrayAdapter<>(requireContext(),
+            android.R.layout.simple_dropdown_item_1line, finderNames));
+        moduleStyleSpinner.setText(moduleNames[style.moduleShape.ordinal()], false);
+        finderStyleSpinner.setText(finderNames[style.finderShape.ordinal()], false);
+
+        moduleStyleSpinner.setOnItemClickListener((parent, view, position, id) -> {
+            style = style.withShapes(QRStyle.ModuleShape.values()[position], style.finderShape);
+            schedulePreview();
+        });
+        finderStyleSpinner.setOnItemClickListener((parent, view, position, id) -> {
+            style = style.withShapes(style.moduleShape, QRStyle.FinderShape.values()[position]);
+            schedulePreview();
+        });
+
+        btnLogo.setText(style.hasLogo() ? "Remove Logo" : "Add Logo");
+        applyColors();
+    }
+
+    private void applyColors() {
+        int fg = Color.parseColor(currentFgColor);
+        int gradient = currentGradientColor != null ? Color.parseColor(currentGradientColor) : fg;
+        int bg = Color.parseColor(currentBgColor);
+        style = style.withColors(fg, gradient, bg);
+        colorForeground.setBackgroundColor(fg);
+        colorGradient.setBackgroundColor(gradient);
+        colorBackground.setBackgroundColor(bg);
+        schedulePreview();
+    }
+
+    // Decoded downsampled and cropped square off the main thread
+    private void loadLogo(@Nullable Uri uri) {
+        if (uri == null) return;
+        ContentResolver resolver = requireContext().getContentResolver();
+        TaskScheduler scheduler = TaskScheduler.get();
+        scheduler.execute(TaskScheduler.Lane.RENDER, () -> {
+            Bitmap logo = decodeLogo(resolver, uri);
+            scheduler.postToMain(() -> {
+                if (getView() == null) return;
+                if (logo == null) {
+                    Toast.makeText(requireContext(), "Could not load image", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                style = style.withLogo(logo);
+                btnLogo.setText("Remove Logo");
+                schedulePreview();
+            });
+        }, () -> {
+            // Pushed out of the render queue by a burst of thumbnails
+            if (getView() == null) return;
+            Toast.makeText(requireContext(), "Could not load image, try again", Toast.LENGTH_SHORT).show();
         });
     }
 
+    private static Bitmap decodeLogo(ContentResolver resolver, Uri uri) {
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream in = resolver.openInputStream(uri)) {
+                BitmapFactory.decodeStream(in, null, options);
+            }
+            int sample = 1;
+            while (Math.min(options.outWidth, options.outHeight) / (sample * 2) >= LOGO_SIZE) {
+                sample *= 2;
+            }
+            options = new BitmapFactory.Options();
+            options.inSampleSize = sample;
+            Bitmap decoded;
+            try (InputStream in = resolver.openInputStream(uri)) {
+                decoded = BitmapFactory.decodeStream(in, null, options);
+            }
+            if (decoded == null) return null;
+
+            int side = Math.min(decoded.getWidth(), decoded.getHeight());
+            Bitmap square = Bitmap.createBitmap(decoded, (decoded.getWidth() - side) / 2,
+                (decoded.getHeight() - side) / 2, side, side);
+            return Bitmap.createScaledBitmap(square, LOGO_SIZE, LOGO_SIZE, true);
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
     private void generateQR() {
+        // Skip the debounce - the user asked for it now
+        mainHandler.removeCallbacks(previewRunnable);
+        renderPreview(true);
+    }
+
+    private void schedulePreview() {
+        // Invalidate any render already in flight, then wait for typing to pause
+        previewGeneration.incrementAndGet();
+        mainHandler.removeCallbacks(previewRunnable);
+        mainHandler.postDelayed(previewRunnable, PREVIEW_DEBOUNCE_MS);
+    }
+
+    // Encodes and draws on the RENDER lane; only the newest generation reaches the UI
+    private void renderPreview(boolean showDialog) {
         String type = typeSpinner.getText().toString();
         String content = buildContentFromFields(type);
-        
+        int generation = previewGeneration.incrementAndGet();
+
         if (content.isEmpty()) {
-            Toast.makeText(requireContext(), "Please fill in all required fields", Toast.LENGTH_SHORT).show();
+            clearPreview();
+            if (showDialog) {
+                Toast.makeText(requireContext(), "Please fill in all required fields", Toast.LENGTH_SHORT).show();
+            }
             return;
         }
 
+        QRStyle renderStyle = style;
+        BarcodeFormat format = selectedFormat;
+        TaskScheduler scheduler = TaskScheduler.get();
+        scheduler.execute(TaskScheduler.Lane.RENDER, () -> {
+            if (previewGeneration.get() != generation) return;
+            try {
+                StructuredAppend.Split codes = encodeCodes(content, type, format, renderStyle);
+                List<Bitmap> bitmaps = new ArrayList<>(codes.symbols.size());
+                for (int i = 0; i < codes.symbols.size(); i++) {
+                    if (previewGeneration.get() != generation) return;
+                    bitmaps.add(QRStyleRenderer.render(codes.payloads.get(i), codes.symbols.get(i),
+                        renderStyle, QR_SIZE));
+                }
+                scheduler.postToMain(() -> {
+                    if (previewGeneration.get() != generation || getView() == null) return;
+                    currentContent = content;
+                    currentFormat = codes.symbols.get(0).format;
+                    currentBitmaps = bitmaps;
+                    currentParts = codes.payloads;
+                    livePreviewPages.setPages(bitmaps);
+                    if (codes.payloads.size() > 1) {
+                        showSplit(codes.symbols);
+                    } else {
+                        showCapacity(codes.symbols.get(0));
+                    }
+                    if (showDialog) {
+                        showQRPreviewDialog();
+                    }
+                });
+            } catch (WriterException e) {
+                scheduler.postToMain(() -> {
+                    if (previewGeneration.get() != generation || getView() == null) return;
+                    clearPreview();
+                    capacityText.setText("Too much data for this code format");
+                    capacityMeter.setProgress(capacityMeter.getMax());
+                    if (showDialog) {
+                        Toast.makeText(requireContext(), "Error generating QR", Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
+    }
+
+    // Dense or oversized QR payloads become a set of smaller codes the scanner joins back up.
+    // Data Matrix and Aztec are never split; they fail as before when the data doesn't fit.
+    private static StructuredAppend.Split encodeCodes(String content, String type, BarcodeFormat format,
+                                                      QRStyle style) throws WriterException {
+        Symbol single = null;
         try {
-            currentContent = content;
-            currentQRBitmap = generateQRBitmap(content, 512, 512);
-            
-            // Show preview dialog
-            showQRPreviewDialog();
-            
+            single = QRStyleRenderer.encode(content, type, format, style);
         } catch (WriterException e) {
-            Toast.makeText(requireContext(), "Error generating QR", Toast.LENGTH_SHORT).show();
+            if (format != null && format != BarcodeFormat.QR_CODE) throw e;
+        }
+        if (single != null && (single.qr == null || !StructuredAppend.shouldSplit(single.qr))) {
+            return new StructuredAppend.Split(Collections.singletonList(content), Collections.singletonList(single));
         }
+        return StructuredAppend.split(content,
+            part -> QRStyleRenderer.encode(part, type, BarcodeFormat.QR_CODE, style));
+    }
+
+    private void showSplit(List<Symbol> symbols) {
+        int maxVersion = 0;
+        for (Symbol symbol : symbols) {
+            maxVersion = Math.max(maxVersion, symbol.qr.version);
+        }
+        capacityText.setText(String.format(Locale.US,
+            "Split into %d codes up to version %d · swipe to see each part · scan them in any order "
+                + "with this app; other scanners show each part on its own, starting with a QRSA: header",
+            symbols.size(), maxVersion));
+        capacityMeter.setProgress(capacityMeter.getMax());
+    }
+
+    private void showCapacity(Symbol symbol) {
+        QREncoder.Result result = symbol.qr;
+        String prefix = selectedFormat == null ? "Auto: " : "";
+        if (result == null) {
+            // ZXing reports no spare capacity for Data Matrix or Aztec, only the size it chose
+            capacityText.setText(prefix + symbol.describe());
+            capacityMeter.setProgress(0);
+            return;
+        }
+        capacityText.setText(prefix + String.format(Locale.US,
+            "Version %d (%d×%d), ECC %s · %d bytes left at this size · %d bytes left in total",
+            result.version, result.modules, result.modules, result.ecLevel,
+            result.bytesLeftInVersion, result.bytesLeftTotal));
+        int used = result.maxBytes - result.bytesLeftTotal;
+        capacityMeter.setProgress(used * capacityMeter.getMax() / result.maxBytes);
+    }
+
+    private void clearPreview() {
+        currentBitmaps = Collections.emptyList();
+        currentParts = Collections.emptyList();
+        livePreviewPages.setPages(currentBitmaps);
+        capacityText.setText("Start typing to see a preview");
+        capacityMeter.setProgress(0);
     }
 
     private String buildContentFromFields(String type) {
@@ -301,20 +641,67 @@ public class CreateFragment extends Fragment {
 
     private void showQRPreviewDialog() {
         View dialogView = getLayoutInflater().inflate(R.layout.dialog_qr_preview, null);
-        ImageView qrImage = dialogView.findViewById(R.id.qr_preview_image);
-        qrImage.setImageBitmap(currentQRBitmap);
-        
-        new MaterialAlertDialogBuilder(requireContext())
-            .setTitle("QR Code Generated")
+        ViewPager2 pager = dialogView.findViewById(R.id.qr_preview_pager);
+        CodePagerAdapter pages = new CodePagerAdapter();
+        pages.setPages(currentBitmaps);
+        pager.setAdapter(pages);
+
+        // The split payloads, not the bitmaps, are what the sheet export and history use
+        int parts = currentParts.size();
+        boolean split = parts > 1;
+        if (split) {
+            TextView caption = dialogView.findViewById(R.id.qr_preview_caption);
+            caption.setText("Part 1 of " + parts);
+            pager.registerOnPageChangeCallback(new ViewPager2.OnPageChangeCallback() {
+                @Override
+                public void onPageSelected(int position) {
+                    caption.setText("Part " + (position + 1) + " of " + parts);
+                }
+            });
+        }
+
+        MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(requireContext())
+            .setTitle(split ? parts + " QR Codes Generated" : "QR Code Generated")
             .setView(dialogView)
             .setPositiveButton("Save to History", (dialog, which) -> saveToHistory())
-            .setNeutralButton("Save to Gallery", (dialog, which) -> saveToGallery())
-            .setNegativeButton("Close", null)
-            .show();
+            .setNegativeButton("Close", null);
+        if (split) {
+            builder.setNeutralButton("Export Sheet", (dialog, which) -> partsSheetLauncher.launch("qr_parts.pdf"));
+        } else {
+            builder.setNeutralButton("Save to Gallery", (dialog, which) -> saveToGallery());
+        }
+        builder.show();
     }
 
+    // Large labels, so the parts stay easy to scan one after another
+    private void exportPartsSheet(@Nullable Uri uri) {
+        List<String> parts = currentParts;
+        if (uri == null || parts.isEmpty()) return;
+
+        String type = typeSpinner.getText().toString();
+        Context appContext = requireContext().getApplicationContext();
+        ContentResolver resolver = appContext.getContentResolver();
+        boolean queued = TaskScheduler.get().execute(TaskScheduler.Lane.EXPORT, () -> {
+            String message;
+            try (OutputStream out = resolver.openOutputStream(uri)) {
+                if (out == null) throw new IOException("Cannot open " + uri);
+                long labels = LabelSheetExporter.exportParts(out, LabelSheetExporter.LAYOUTS[2], type, parts);
+                message = "Exported " + labels + " codes";
+            } catch (IOException e) {
+                message = "Sheet export failed";
+            }
+            String result = message;
+            mainHandler.post(() -> Toast.makeText(appContext, result, Toast.LENGTH_SHORT).show());
+        });
+        if (!queued) {
+            Toast.makeText(appContext, "Another export is still running", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // A split set is stored as its full payload, like a scanned set once reassembled;
+    // history renders it back as parts through StructuredAppend.encodeStored
     private void saveToHistory() {
-        if (currentQRBitmap == null) {
+        if (currentBitmaps.isEmpty()) {
             Toast.makeText(requireContext(), "Generate QR first", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -326,13 +713,14 @@ public class CreateFragment extends Fragment {
         item.setSaved(false);
         item.setColorForeground(currentFgColor);
         item.setColorBackground(currentBgColor);
+        item.setFormat(currentFormat.name());
         
         viewModel.insert(item);
         Toast.makeText(requireContext(), "Saved to history", Toast.LENGTH_SHORT).show();
     }
 
     private void saveToGallery() {
-        if (currentQRBitmap == null) {
+        if (currentBitmaps.isEmpty()) {
             Toast.makeText(requireContext(), "Generate QR first", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -367,22 +755,32 @@ public class CreateFragment extends Fragment {
 
     @androidx.annotation.RequiresApi(api = Build.VERSION_CODES.Q)
     private void saveToGalleryAndroid10Plus() {
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.Images.Media.DISPLAY_NAME, "QR_" + System.currentTimeMillis() + ".png");
-        values.put(MediaStore.Images.Media.MIME_TYPE, "image/png");
-        values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/QR Master");
-        
-        Uri uri = requireContext().getContentResolver().insert(
-            MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-        
-        if (uri != null) {
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < currentBitmaps.size(); i++) {
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Images.Media.DISPLAY_NAME, galleryName(timestamp, i));
+            values.put(MediaStore.Images.Media.MIME_TYPE, "image/png");
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/QR Master");
+
+            Uri uri = requireContext().getContentResolver().insert(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+            if (uri == null) return;
+
             try (OutputStream out = requireContext().getContentResolver().openOutputStream(uri)) {
-                currentQRBitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
-                Toast.makeText(requireContext(), "Saved to gallery", Toast.LENGTH_SHORT).show();
+                currentBitmaps.get(i).compress(Bitmap.CompressFormat.PNG, 100, out);
             } catch (IOException e) {
                 Toast.makeText(requireContext(), "Error saving to gallery", Toast.LENGTH_SHORT).show();
+                return;
             }
         }
+        Toast.makeText(requireContext(), "Saved to gallery", Toast.LENGTH_SHORT).show();
+    }
+
+    // Parts of a split set share a timestamp and sort in scanning order
+    private String galleryName(long timestamp, int index) {
+        return currentParts.size() > 1
+            ? String.format(Locale.US, "QR_%d_part%02d.png", timestamp, index + 1)
+            : "QR_" + timestamp + ".png";
     }
 
     private void saveToGalleryLegacy() {
@@ -393,37 +791,23 @@ public class CreateFragment extends Fragment {
             qrDir.mkdirs();
         }
         
-        File imageFile = new File(qrDir, "QR_" + System.currentTimeMillis() + ".png");
-        
-        try (FileOutputStream out = new FileOutputStream(imageFile)) {
-            currentQRBitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
-            
-            // Notify gallery
-            android.media.MediaScannerConnection.scanFile(requireContext(), 
-                new String[]{imageFile.getAbsolutePath()}, 
-                new String[]{"image/png"}, null);
-            
-            Toast.makeText(requireContext(), "Saved to gallery", Toast.LENGTH_SHORT).show();
-        } catch (IOException e) {
-            Toast.makeText(requireContext(), "Error saving to gallery", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    private Bitmap generateQRBitmap(String content, int width, int height) throws WriterException {
-        QRCodeWriter writer = new QRCodeWriter();
-        BitMatrix bitMatrix = writer.encode(content, BarcodeFormat.QR_CODE, width, height);
-        
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
-        
-        int fg = Color.parseColor(currentFgColor);
-        int bg = Color.parseColor(currentBgColor);
-        
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                bitmap.setPixel(x, y, bitMatrix.get(x, y) ? fg : bg);
+        long timestamp = System.currentTimeMillis();
+        String[] paths = new String[currentBitmaps.size()];
+        String[] mimeTypes = new String[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            File imageFile = new File(qrDir, galleryName(timestamp, i));
+            try (FileOutputStream out = new FileOutputStream(imageFile)) {
+                currentBitmaps.get(i).compress(Bitmap.CompressFormat.PNG, 100, out);
+            } catch (IOException e) {
+                Toast.makeText(requireContext(), "Error saving to gallery", Toast.LENGTH_SHORT).show();
+                return;
             }
+            paths[i] = imageFile.getAbsolutePath();
+            mimeTypes[i] = "image/png";
         }
-        
-        return bitmap;
+
+        // Notify gallery
+        android.media.MediaScannerConnection.scanFile(requireContext(), paths, mimeTypes, null);
+        Toast.makeText(requireContext(), "Saved to gallery", Toast.LENGTH_SHORT).show();
     }
 }
@@ -1,42 +1,84 @@
 package com.qrmaster.app.fragments;
 
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import com.google.android.material.appbar.MaterialToolbar;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.qrmaster.app.R;
+import com.qrmaster.app.TaskScheduler;
 import com.qrmaster.app.adapters.QRAdapter;
+import com.qrmaster.app.data.HistoryBackup;
+import com.qrmaster.app.data.HistoryRetention;
+import com.qrmaster.app.data.QRDatabase;
+import com.qrmaster.app.models.QRListItem;
+import com.qrmaster.app.server.LanServer;
+import com.qrmaster.app.utils.DebugStats;
 import com.qrmaster.app.viewmodels.QRViewModel;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
 
 public class HistoryFragment extends Fragment {
+    private static final int IMPORT_BATCH_SIZE = 500;
+
     private RecyclerView recyclerView;
     private TextView emptyView;
+    private MaterialToolbar toolbar;
     private QRAdapter adapter;
     private QRViewModel viewModel;
+    // Detached while the tab is hidden; see onHiddenChanged
+    private Observer<List<QRListItem>> itemsObserver;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final ActivityResultLauncher<String> exportJsonlLauncher = registerForActivityResult(
+        new ActivityResultContracts.CreateDocument("application/x-ndjson"),
+        uri -> exportTo(uri, HistoryBackup.Format.JSONL));
+
+    private final ActivityResultLauncher<String> exportCsvLauncher = registerForActivityResult(
+        new ActivityResultContracts.CreateDocument("text/csv"),
+        uri -> exportTo(uri, HistoryBackup.Format.CSV));
+
+    private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(
+        new ActivityResultContracts.OpenDocument(), this::importFrom);
 
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_history, container, false);
-        
+
         recyclerView = view.findViewById(R.id.recycler_view);
         emptyView = view.findViewById(R.id.empty_view);
-        
+        toolbar = view.findViewById(R.id.toolbar);
+
         // FIX: Initialize ViewModel FIRST
-        viewModel = new ViewModelProvider(this).get(QRViewModel.class);
-        
+        viewModel = new ViewModelProvider(requireActivity()).get(QRViewModel.class);
+
+        setupToolbar();
+
         recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
         adapter = new QRAdapter(requireContext(), viewModel);
         recyclerView.setAdapter(adapter);
-        
-        viewModel.getAllItems().observe(getViewLifecycleOwner(), items -> {
+
+        itemsObserver = items -> {
             adapter.setItems(items);
             if (items.isEmpty()) {
                 emptyView.setVisibility(View.VISIBLE);
@@ -45,8 +87,204 @@ public class HistoryFragment extends Fragment {
                 emptyView.setVisibility(View.GONE);
                 recyclerView.setVisibility(View.VISIBLE);
             }
-        });
-        
+        };
+        if (!isHidden()) {
+            viewModel.getAllItems().observe(getViewLifecycleOwner(), itemsObserver);
+        }
+
         return view;
     }
-}
\ No newline at end of file
+
+    // Hidden tabs stay STARTED so their views survive, which would keep the list
+    // re-diffing on every history write. Re-observing delivers the latest list at once.
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        if (getView() == null) return;
+        if (hidden) {
+            viewModel.getAllItems().removeObserver(itemsObserver);
+        } else {
+            viewModel.getAllItems().observe(getViewLifecycleOwner(), itemsObserver);
+        }
+    }
+
+    private void setupToolbar() {
+        toolbar.setOnMenuItemClickListener(item -> {
+            int itemId = item.getItemId();
+            if (itemId == R.id.action_export_jsonl) {
+                exportJsonlLauncher.launch("qr_history.jsonl");
+                return true;
+            } else if (itemId == R.id.action_export_csv) {
+                exportCsvLauncher.launch("qr_history.csv");
+                return true;
+            } else if (itemId == R.id.action_import) {
+                importLauncher.launch(new String[]{"application/x-ndjson", "application/json",
+                    "text/csv", "text/comma-separated-values", "text/plain"});
+                return true;
+            } else if (itemId == R.id.action_auto_cleanup) {
+                showAutoCleanupDialog();
+                return true;
+            } else if (itemId == R.id.action_server) {
+                showServerDialog();
+                return true;
+            } else if (itemId == R.id.action_stats) {
+                DebugStats.show(requireContext());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    // Row and age limits for HistoryRetention; saved codes are always kept
+    private void showAutoCleanupDialog() {
+        String[] labels = {"Off", "Keep newest 1,000", "Keep newest 5,000", "Keep the last year"};
+        int[] maxRows = {0, 1000, 5000, 0};
+        int[] maxAgeDays = {0, 0, 0, 365};
+
+        HistoryRetention.Policy policy = HistoryRetention.Policy.fromPreferences(requireContext());
+        int checked = 0;
+        for (int i = 1; i < labels.length; i++) {
+            if (policy.maxRows == maxRows[i] && policy.maxAgeMillis == maxAgeDays[i] * 24L * 60 * 60 * 1000) {
+                checked = i;
+            }
+        }
+
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Auto-cleanup")
+            .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                dialog.dismiss();
+                if (which == 0) {
+                    HistoryRetention.Policy.save(requireContext(), 0, 0);
+                    return;
+                }
+                new MaterialAlertDialogBuilder(requireContext())
+                    .setTitle(labels[which])
+                    .setMessage("Older entries will be deleted for good, now and once a day. Saved codes are kept.")
+                    .setPositiveButton("Turn On", (confirm, button) ->
+                        enableAutoCleanup(maxRows[which], maxAgeDays[which]))
+                    .setNegativeButton("Cancel", null)
+                    .show();
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private void enableAutoCleanup(int maxRows, int maxAgeDays) {
+        Context appContext = requireContext().getApplicationContext();
+        HistoryRetention.Policy.save(appContext, maxRows, maxAgeDays);
+        boolean queued = HistoryRetention.runNow(appContext, result -> {
+            String message = "Removed " + result.rowsRemoved + " old entries";
+            if (result.bytesReclaimed > 0) {
+                message += ", freed " + result.bytesReclaimed / 1024 + " KiB";
+            }
+            Toast.makeText(appContext, message, Toast.LENGTH_SHORT).show();
+        });
+        if (!queued) {
+            Toast.makeText(appContext, "Cleanup will run on a later launch", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void showServerDialog() {
+        LanServer server = LanServer.get(requireContext());
+        if (server.isRunning()) {
+            showServerRunning(server);
+            return;
+        }
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("LAN Server")
+            .setMessage("Let computers on this network read your history over HTTP on port "
+                + LanServer.PORT + "? Requests need the access token shown next.")
+            .setPositiveButton("Start", (dialog, which) -> {
+                try {
+                    server.start();
+                    showServerRunning(server);
+                } catch (IOException e) {
+                    Toast.makeText(requireContext(), "Could not start server: " + e.getMessage(),
+                        Toast.LENGTH_LONG).show();
+                }
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private void showServerRunning(LanServer server) {
+        String url = server.url();
+        TextView message = new TextView(requireContext());
+        message.setTextIsSelectable(true);
+        message.setPadding(64, 24, 64, 0);
+        message.setText(url != null
+            ? "Serving history at\n\n" + url + "\n\nAlso /search?q=… and /qr?data=… with the same token."
+            : "Running, but this device has no network address. Connect to Wi-Fi.");
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("LAN Server Running")
+            .setView(message)
+            .setPositiveButton("Keep Running", null)
+            .setNegativeButton("Stop", (dialog, which) -> {
+                server.stop();
+                Toast.makeText(requireContext(), "Server stopped", Toast.LENGTH_SHORT).show();
+            })
+            .show();
+    }
+
+    private void exportTo(@Nullable Uri uri, HistoryBackup.Format format) {
+        if (uri == null) return;
+
+        Context appContext = requireContext().getApplicationContext();
+        ContentResolver resolver = appContext.getContentResolver();
+        runBackup(appContext, () -> {
+            HistoryBackup backup = new HistoryBackup(QRDatabase.getInstance(appContext));
+            try (OutputStream out = resolver.openOutputStream(uri)) {
+                if (out == null) throw new IOException("Cannot open " + uri);
+                long rows = backup.export(out, format, count -> showProgress("Exported " + count));
+                finish(appContext, "Exported " + rows + " items");
+            } catch (IOException e) {
+                finish(appContext, "Export failed");
+            }
+        });
+    }
+
+    private void importFrom(@Nullable Uri uri) {
+        if (uri == null) return;
+
+        Context appContext = requireContext().getApplicationContext();
+        ContentResolver resolver = appContext.getContentResolver();
+        String mimeType = resolver.getType(uri);
+        HistoryBackup.Format format = (mimeType != null && mimeType.contains("csv")) ||
+            uri.toString().endsWith(".csv") ? HistoryBackup.Format.CSV : HistoryBackup.Format.JSONL;
+
+        runBackup(appContext, () -> {
+            HistoryBackup backup = new HistoryBackup(QRDatabase.getInstance(appContext));
+            try (InputStream in = resolver.openInputStream(uri)) {
+                if (in == null) throw new IOException("Cannot open " + uri);
+                long rows = backup.importFrom(in, format, IMPORT_BATCH_SIZE,
+                    count -> showProgress("Imported " + count));
+                finish(appContext, "Imported " + rows + " items");
+            } catch (IOException e) {
+                finish(appContext, "Import failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void runBackup(Context appContext, Runnable task) {
+        if (!TaskScheduler.get().execute(TaskScheduler.Lane.EXPORT, task)) {
+            Toast.makeText(appContext, "Another export or import is still running", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void showProgress(String text) {
+        mainHandler.post(() -> {
+            if (getView() != null) {
+                toolbar.setSubtitle(text);
+            }
+        });
+    }
+
+    private void finish(Context appContext, String message) {
+        mainHandler.post(() -> {
+            if (getView() != null) {
+                toolbar.setSubtitle(null);
+            }
+            Toast.makeText(appContext, message, Toast.LENGTH_SHORT).show();
+        });
+    }
+}
@@ -1,7 +1,13 @@
 // SavedFragment.java - Enhanced with multi-select and delete all
 package com.qrmaster.app.fragments;
 
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -10,31 +16,58 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.view.ActionMode;
+import androidx.core.content.FileProvider;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.google.android.material.snackbar.Snackbar;
 import com.qrmaster.app.R;
+import com.qrmaster.app.TaskScheduler;
+import com.qrmaster.app.adapters.IdSelection;
 import com.qrmaster.app.adapters.QRAdapter;
-import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.data.HistoryBackup;
+import com.qrmaster.app.data.LabelSheetExporter;
+import com.qrmaster.app.data.QRDatabase;
+import com.qrmaster.app.data.SelectionZipExporter;
+import com.qrmaster.app.models.QRListItem;
 import com.qrmaster.app.viewmodels.QRViewModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 public class SavedFragment extends Fragment {
+    private static final String KEY_SELECTION = "selection";
+
     private RecyclerView recyclerView;
     private TextView emptyView;
     private MaterialToolbar toolbar;
     private QRAdapter adapter;
     private QRViewModel viewModel;
+    // Detached while the tab is hidden; see onHiddenChanged
+    private Observer<List<QRListItem>> itemsObserver;
     private ActionMode actionMode;
-    private List<QRItem> selectedItems = new ArrayList<>();
+    private final IdSelection selection = new IdSelection();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Chosen before the file picker opens; null ids means every saved item
+    private LabelSheetExporter.Layout pendingLabelLayout;
+    private List<Integer> pendingLabelIds;
+    private final ActivityResultLauncher<String> labelsLauncher = registerForActivityResult(
+        new ActivityResultContracts.CreateDocument("application/pdf"), this::exportLabels);
 
     @Nullable
     @Override
@@ -47,12 +80,12 @@ public class SavedFragment extends Fragment {
         
         setupToolbar();
         
-        viewModel = new ViewModelProvider(this).get(QRViewModel.class);
+        viewModel = new ViewModelProvider(requireActivity()).get(QRViewModel.class);
         
         recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
         adapter = new QRAdapter(requireContext(), viewModel, new QRAdapter.OnItemClickListener() {
             @Override
-            public void onItemClick(QRItem item) {
+            public void onItemClick(QRListItem item) {
                 if (actionMode != null) {
                     toggleSelection(item);
                 } else {
@@ -62,34 +95,88 @@ public class SavedFragment extends Fragment {
             }
 
             @Override
-            public void onItemLongClick(QRItem item) {
-                if (actionMode == null) {
-                    actionMode = ((AppCompatActivity) requireActivity()).startSupportActionMode(actionModeCallback);
-                }
+            public void onItemLongClick(QRListItem item) {
+                startActionMode();
                 toggleSelection(item);
             }
 
             @Override
-            public void onMenuClick(QRItem item) {
+            public void onMenuClick(QRListItem item) {
                 showItemMenu(item);
             }
         });
+        adapter.setSelection(selection);
         recyclerView.setAdapter(adapter);
         
-        viewModel.getSavedItems().observe(getViewLifecycleOwner(), items -> {
+        itemsObserver = items -> {
             adapter.setItems(items);
-            if (items.isEmpty()) {
-                emptyView.setVisibility(View.VISIBLE);
-                recyclerView.setVisibility(View.GONE);
-            } else {
-                emptyView.setVisibility(View.GONE);
-                recyclerView.setVisibility(View.VISIBLE);
+            updateEmptyState();
+            selection.retainAll(items);
+            updateActionMode();
+        };
+        if (!isHidden()) {
+            viewModel.getSavedItems().observe(getViewLifecycleOwner(), itemsObserver);
+        }
+
+        // Selection survives rotation; the action mode is restarted to show it
+        if (savedInstanceState != null) {
+            int[] savedSelection = savedInstanceState.getIntArray(KEY_SELECTION);
+            if (savedSelection != null && savedSelection.length > 0) {
+                selection.restore(savedSelection);
+                startActionMode();
+                updateActionMode();
             }
-        });
+        }
         
         return view;
     }
 
+    // Hidden tabs stay STARTED so their views survive; without this the saved list
+    // would re-diff on every history write while another tab is on screen
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        if (getView() == null) return;
+        if (hidden) {
+            viewModel.getSavedItems().removeObserver(itemsObserver);
+        } else {
+            viewModel.getSavedItems().observe(getViewLifecycleOwner(), itemsObserver);
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putIntArray(KEY_SELECTION, selection.toArray());
+    }
+
+    private void updateEmptyState() {
+        if (adapter.getItemCount() == 0) {
+            emptyView.setVisibility(View.VISIBLE);
+            recyclerView.setVisibility(View.GONE);
+        } else {
+            emptyView.setVisibility(View.GONE);
+            recyclerView.setVisibility(View.VISIBLE);
+        }
+    }
+
+    // Rows are tombstoned, so they vanish from the list immediately and can be
+    // restored until the purger hard-deletes them
+    private void softDelete(List<Integer> ids) {
+        long token = viewModel.softDeleteMultiple(ids, null);
+        adapter.removeItems(new HashSet<>(ids));
+        updateEmptyState();
+        showUndo(ids.size() == 1 ? "Deleted" : ids.size() + " items deleted", token);
+    }
+
+    private void showUndo(String message, long token) {
+        View root = getView();
+        if (root == null) return;
+        Snackbar.make(root, message, Snackbar.LENGTH_LONG)
+            .setAction("Undo", v -> viewModel.restoreDeleted(token))
+            .show();
+    }
+
     private void setupToolbar() {
         toolbar.setTitle("Saved");
         toolbar.inflateMenu(R.menu.saved_menu);
@@ -99,46 +186,150 @@ public class SavedFragment extends Fragment {
                 showDeleteAllDialog();
                 return true;
             } else if (itemId == R.id.action_select_all) {
-                if (actionMode == null) {
-                    actionMode = ((AppCompatActivity) requireActivity()).startSupportActionMode(actionModeCallback);
-                }
+                startActionMode();
                 selectAll();
                 return true;
+            } else if (itemId == R.id.action_print_labels) {
+                printLabels(null);
+                return true;
             }
             return false;
         });
     }
 
-    private void toggleSelection(QRItem item) {
-        if (selectedItems.contains(item)) {
-            selectedItems.remove(item);
+    private void startActionMode() {
+        if (actionMode == null) {
+            actionMode = ((AppCompatActivity) requireActivity()).startSupportActionMode(actionModeCallback);
+        }
+    }
+
+    private void toggleSelection(QRListItem item) {
+        selection.toggle(item.getId());
+        adapter.notifySelectionChanged(item.getId());
+        updateActionMode();
+    }
+
+    private void updateActionMode() {
+        if (actionMode == null) return;
+        if (selection.isEmpty()) {
+            actionMode.finish();
         } else {
-            selectedItems.add(item);
+            actionMode.setTitle(selection.size() + " selected");
         }
-        
-        adapter.setSelectedItems(selectedItems);
-        
-        if (actionMode != null) {
-            if (selectedItems.isEmpty()) {
-                actionMode.finish();
-            } else {
-                actionMode.setTitle(selectedItems.size() + " selected");
+    }
+
+    // One id-only query instead of walking the loaded rows
+    private void selectAll() {
+        viewModel.getSavedIds(ids -> {
+            if (getView() == null || actionMode == null) return;
+            selection.setAll(ids);
+            adapter.notifySelectionChanged();
+            updateActionMode();
+        });
+    }
+
+    private void printLabels(@Nullable List<Integer> ids) {
+        String[] names = new String[LabelSheetExporter.LAYOUTS.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = LabelSheetExporter.LAYOUTS[i].name;
+        }
+        new MaterialAlertDialogBuilder(requireContext())
+            .setTitle("Label Sheet")
+            .setItems(names, (dialog, which) -> {
+                pendingLabelLayout = LabelSheetExporter.LAYOUTS[which];
+                pendingLabelIds = ids;
+                labelsLauncher.launch("qr_labels.pdf");
+            })
+            .show();
+    }
+
+    private void exportLabels(@Nullable Uri uri) {
+        LabelSheetExporter.Layout layout = pendingLabelLayout;
+        List<Integer> ids = pendingLabelIds;
+        pendingLabelLayout = null;
+        pendingLabelIds = null;
+        if (uri == null || layout == null) return;
+
+        Context appContext = requireContext().getApplicationContext();
+        ContentResolver resolver = appContext.getContentResolver();
+        boolean queued = TaskScheduler.get().execute(TaskScheduler.Lane.EXPORT, () -> {
+            LabelSheetExporter exporter = new LabelSheetExporter(QRDatabase.getInstance(appContext));
+            String message;
+            try (OutputStream out = resolver.openOutputStream(uri)) {
+                if (out == null) throw new IOException("Cannot open " + uri);
+                HistoryBackup.ProgressListener progress = count -> showProgress("Laid out " + count + " labels");
+                long labels = ids != null
+                    ? exporter.exportIds(out, layout, ids, progress)
+                    : exporter.exportSaved(out, layout, progress);
+                message = "Exported " + labels + " labels";
+            } catch (IOException e) {
+                message = "Label export failed";
+            }
+            String result = message;
+            mainHandler.post(() -> {
+                if (getView() != null) {
+                    toolbar.setSubtitle(null);
+                }
+                Toast.makeText(appContext, result, Toast.LENGTH_SHORT).show();
+            });
+        });
+        if (!queued) {
+            Toast.makeText(appContext, "Another export is still running", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // Renders the selection into one ZIP in the cache and hands it to a single share sheet
+    private void shareAsZip(List<Integer> ids) {
+        Context appContext = requireContext().getApplicationContext();
+        boolean queued = TaskScheduler.get().execute(TaskScheduler.Lane.EXPORT, () -> {
+            File dir = new File(appContext.getCacheDir(), "exports");
+            dir.mkdirs();
+            // Only the newest export needs to outlive the share sheet
+            File[] old = dir.listFiles();
+            if (old != null) {
+                for (File file : old) file.delete();
+            }
+            File zipFile = new File(dir, "qr_codes_" + System.currentTimeMillis() + ".zip");
+
+            SelectionZipExporter exporter = new SelectionZipExporter(QRDatabase.getInstance(appContext));
+            long images;
+            try {
+                images = exporter.export(ids, zipFile, count -> showProgress("Rendered " + count + " of " + ids.size()));
+            } catch (IOException e) {
+                zipFile.delete();
+                images = -1;
             }
+            long result = images;
+            mainHandler.post(() -> {
+                if (getView() != null) {
+                    toolbar.setSubtitle(null);
+                }
+                if (result < 0) {
+                    Toast.makeText(appContext, "ZIP export failed", Toast.LENGTH_SHORT).show();
+                } else if (isAdded()) {
+                    Uri uri = FileProvider.getUriForFile(appContext, appContext.getPackageName() + ".fileprovider", zipFile);
+                    Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                    shareIntent.setType("application/zip");
+                    shareIntent.putExtra(Intent.EXTRA_STREAM, uri);
+                    shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                    startActivity(Intent.createChooser(shareIntent, "Share " + result + " QR Codes"));
+                }
+            });
+        });
+        if (!queued) {
+            Toast.makeText(appContext, "Another export is still running", Toast.LENGTH_SHORT).show();
         }
     }
 
-    private void selectAll() {
-        selectedItems.clear();
-        viewModel.getSavedItems().observe(getViewLifecycleOwner(), items -> {
-            selectedItems.addAll(items);
-            adapter.setSelectedItems(selectedItems);
-            if (actionMode != null) {
-                actionMode.setTitle(selectedItems.size() + " selected");
+    private void showProgress(String text) {
+        mainHandler.post(() -> {
+            if (getView() != null) {
+                toolbar.setSubtitle(text);
             }
         });
     }
 
-    private void showItemMenu(QRItem item) {
+    private void showItemMenu(QRListItem item) {
         String[] options = {"Delete", "Remove from Saved", "Share", "Edit"};
         
         new MaterialAlertDialogBuilder(requireContext())
@@ -163,21 +354,17 @@ public class SavedFragment extends Fragment {
             .show();
     }
 
-    private void deleteItem(QRItem item) {
+    private void deleteItem(QRListItem item) {
         new MaterialAlertDialogBuilder(requireContext())
             .setTitle("Delete QR Code")
             .setMessage("Are you sure you want to delete this QR code?")
-            .setPositiveButton("Delete", (dialog, which) -> {
-                viewModel.delete(item);
-                Toast.makeText(requireContext(), "Deleted", Toast.LENGTH_SHORT).show();
-            })
+            .setPositiveButton("Delete", (dialog, which) -> softDelete(Collections.singletonList(item.getId())))
             .setNegativeButton("Cancel", null)
             .show();
     }
 
-    private void removeFromSaved(QRItem item) {
-        item.setSaved(false);
-        viewModel.update(item);
+    private void removeFromSaved(QRListItem item) {
+        viewModel.setSaved(item.getId(), false);
         Toast.makeText(requireContext(), "Removed from saved", Toast.LENGTH_SHORT).show();
     }
 
@@ -186,30 +373,19 @@ public class SavedFragment extends Fragment {
             .setTitle("Delete All Saved")
             .setMessage("Are you sure you want to delete all saved QR codes?")
             .setPositiveButton("Delete All", (dialog, which) -> {
-                viewModel.getSavedItems().observe(getViewLifecycleOwner(), items -> {
-                    List<Integer> ids = new ArrayList<>();
-                    for (QRItem item : items) {
-                        ids.add(item.getId());
-                    }
-                    viewModel.deleteMultiple(ids);
-                    Toast.makeText(requireContext(), "All saved items deleted", Toast.LENGTH_SHORT).show();
-                });
+                long token = viewModel.softDeleteAllSaved(null);
+                adapter.setItems(new ArrayList<>());
+                updateEmptyState();
+                showUndo("All saved items deleted", token);
             })
             .setNegativeButton("Cancel", null)
             .show();
     }
 
     private void deleteSelectedItems() {
-        List<Integer> ids = new ArrayList<>();
-        for (QRItem item : selectedItems) {
-            ids.add(item.getId());
-        }
-        viewModel.deleteMultiple(ids);
-        Toast.makeText(requireContext(), selectedItems.size() + " items deleted", Toast.LENGTH_SHORT).show();
-        
-        selectedItems.clear();
-        adapter.setSelectedItems(selectedItems);
+        softDelete(selection.toList());
         
+        // Clearing the selection happens in onDestroyActionMode
         if (actionMode != null) {
             actionMode.finish();
         }
@@ -231,10 +407,18 @@ public class SavedFragment extends Fragment {
         @Override
         public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
             int itemId = item.getItemId();
-            if (itemId == R.id.action_delete) {
+            if (itemId == R.id.action_share_zip) {
+                shareAsZip(selection.toList());
+                mode.finish();
+                return true;
+            } else if (itemId == R.id.action_print_labels) {
+                printLabels(selection.toList());
+                mode.finish();
+                return true;
+            } else if (itemId == R.id.action_delete) {
                 new MaterialAlertDialogBuilder(requireContext())
                     .setTitle("Delete Selected")
-                    .setMessage("Delete " + selectedItems.size() + " items?")
+                    .setMessage("Delete " + selection.size() + " items?")
                     .setPositiveButton("Delete", (dialog, which) -> deleteSelectedItems())
                     .setNegativeButton("Cancel", null)
                     .show();
@@ -246,8 +430,8 @@ public class SavedFragment extends Fragment {
         @Override
         public void onDestroyActionMode(ActionMode mode) {
             actionMode = null;
-            selectedItems.clear();
-            adapter.setSelectedItems(selectedItems);
+            selection.clear();
+            adapter.notifySelectionChanged();
         }
     };
 }
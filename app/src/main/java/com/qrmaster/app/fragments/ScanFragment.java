@@ -18,6 +18,7 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -30,24 +31,46 @@ import androidx.lifecycle.ViewModelProvider;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.barcode.common.Barcode;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.zxing.BarcodeFormat;
 import com.qrmaster.app.R;
+import com.qrmaster.app.TaskScheduler;
 import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.utils.CameraLifecycleOwner;
+import com.qrmaster.app.utils.Metrics;
+import com.qrmaster.app.utils.QRCodeUtils;
+import com.qrmaster.app.utils.ScanFallback;
+import com.qrmaster.app.utils.ScanWarmup;
+import com.qrmaster.app.utils.StructuredAppend;
 import com.qrmaster.app.viewmodels.QRViewModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 public class ScanFragment extends Fragment {
     private static final int CAMERA_PERMISSION_CODE = 100;
     private PreviewView previewView;
     private MaterialButton btnFlash, btnGallery;
+    private TextView scanInstruction;
+    private TextView scanBadge;
+    // Code the badge describes; main thread only
+    private String badgeContent;
     private Camera camera;
     private boolean flashEnabled = false;
     private QRViewModel viewModel;
-    private boolean isScanning = true; // Control flag
-    private long lastScanTime = 0;
+    private CameraLifecycleOwner cameraLifecycleOwner;
+    // Frames ML Kit finished with, and how many held at least one code
+    private static final Metrics.Histogram decodeTime = Metrics.histogram("scan.mlkit_decode");
+    private static final Metrics.Counter framesWithCode = Metrics.counter("scan.frames_with_code");
+
+    private volatile boolean isScanning = true; // Control flag - read on the camera lane
+    private volatile long lastScanTime = 0;
     private static final long SCAN_COOLDOWN = 2000; // 2 seconds cooldown
+    private static final String DEFAULT_INSTRUCTION = "Point camera at QR code";
+    // Parts of a split set seen so far; only touched from ML Kit callbacks on the main thread
+    private final StructuredAppend.Assembler partAssembler = new StructuredAppend.Assembler();
 
     @Nullable
     @Override
@@ -57,8 +80,12 @@ public class ScanFragment extends Fragment {
         previewView = view.findViewById(R.id.preview_view);
         btnFlash = view.findViewById(R.id.btn_flash);
         btnGallery = view.findViewById(R.id.btn_gallery);
+        scanInstruction = view.findViewById(R.id.scan_instruction);
+        scanBadge = view.findViewById(R.id.scan_badge);
         
-        viewModel = new ViewModelProvider(this).get(QRViewModel.class);
+        viewModel = new ViewModelProvider(requireActivity()).get(QRViewModel.class);
+        cameraLifecycleOwner = new CameraLifecycleOwner(getViewLifecycleOwner());
+        cameraLifecycleOwner.setVisible(!isHidden());
         
         btnFlash.setOnClickListener(v -> toggleFlash());
         btnGallery.setOnClickListener(v -> openGallery());
@@ -110,7 +137,8 @@ public class ScanFragment extends Fragment {
             .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
             .build();
 
-        imageAnalysis.setAnalyzer(ContextCompat.getMainExecutor(requireContext()), image -> {
+        // Frames are analyzed on the scheduler's highest-priority lane, off the main thread
+        imageAnalysis.setAnalyzer(TaskScheduler.get().executor(TaskScheduler.Lane.CAMERA), image -> {
             if (isScanning) {
                 processImage(image);
             } else {
@@ -123,7 +151,7 @@ public class ScanFragment extends Fragment {
         try {
             cameraProvider.unbindAll();
             camera = cameraProvider.bindToLifecycle(
-                this, cameraSelector, preview, imageAnalysis);
+                cameraLifecycleOwner, cameraSelector, preview, imageAnalysis);
         } catch (Exception e) {
             Toast.makeText(requireContext(), "Camera binding failed", Toast.LENGTH_SHORT).show();
         }
@@ -148,11 +176,16 @@ public class ScanFragment extends Fragment {
             imageProxy.getImageInfo().getRotationDegrees()
         );
 
-        BarcodeScanning.getClient().process(image)
+        long decodeStart = System.nanoTime();
+        ScanWarmup.getScanner().process(image)
             .addOnSuccessListener(barcodes -> {
+                List<String> values = rawValues(barcodes);
+                updateSeenBadge(values.isEmpty() ? null : values.get(0));
+                if (collectParts(values)) return;
                 for (Barcode barcode : barcodes) {
                     String content = barcode.getRawValue();
                     if (content != null && isScanning) {
+                        ScanWarmup.recordFirstDecode();
                         isScanning = false; // Stop scanning
                         lastScanTime = System.currentTimeMillis();
                         handleScannedCode(content, barcode);
@@ -160,25 +193,140 @@ public class ScanFragment extends Fragment {
                     }
                 }
             })
-            .addOnCompleteListener(task -> imageProxy.close());
+            // Back on the camera lane, so the fallback's ROI copy stays off the main thread.
+            // If the lane is full the frame is skipped, but it must still be closed or
+            // CameraX stops delivering new ones.
+            .addOnCompleteListener(listener -> {
+                if (!TaskScheduler.get().execute(TaskScheduler.Lane.CAMERA, listener)) {
+                    imageProxy.close();
+                }
+            }, task -> {
+                decodeTime.recordSince(decodeStart);
+                if (task.isSuccessful() && !task.getResult().isEmpty()) {
+                    framesWithCode.inc();
+                }
+                if (task.isSuccessful() && isScanning && rawValues(task.getResult()).isEmpty()) {
+                    ScanFallback.offer(imageProxy, this::onFallbackDecoded);
+                }
+                imageProxy.close();
+            });
+    }
+
+    private static List<String> rawValues(List<Barcode> barcodes) {
+        List<String> values = new ArrayList<>(barcodes.size());
+        for (Barcode barcode : barcodes) {
+            if (barcode.getRawValue() != null) {
+                values.add(barcode.getRawValue());
+            }
+        }
+        return values;
+    }
+
+    // Runs for every decoded frame, so it only asks the in-memory filter; the
+    // database is consulted once per code, and only when the filter says maybe
+    private void updateSeenBadge(@Nullable String content) {
+        if (scanBadge == null) return;
+        if (content == null || StructuredAppend.parse(content) != null) {
+            badgeContent = null;
+            scanBadge.setVisibility(View.GONE);
+            return;
+        }
+        if (content.equals(badgeContent)) return;
+        badgeContent = content;
+
+        Boolean maybe = viewModel.mightHaveSeen(content);
+        if (maybe == null) {
+            // Index still building
+            scanBadge.setVisibility(View.GONE);
+        } else if (!maybe) {
+            showSeenBadge(false);
+        } else {
+            scanBadge.setVisibility(View.GONE);
+            viewModel.checkSeen(content, seen -> {
+                if (content.equals(badgeContent)) showSeenBadge(seen);
+            });
+        }
+    }
+
+    private void showSeenBadge(boolean seen) {
+        scanBadge.setText(seen ? "Seen before" : "New");
+        scanBadge.setVisibility(View.VISIBLE);
+    }
+
+    // A low-contrast, inverted or glare-damaged code that ML Kit missed
+    private void onFallbackDecoded(String content, BarcodeFormat format) {
+        if (!isAdded() || !isScanning) return;
+        if (collectParts(Collections.singletonList(content))) return;
+        ScanWarmup.recordFirstDecode();
+        isScanning = false;
+        lastScanTime = System.currentTimeMillis();
+        handleScannedCode(content, QRCodeUtils.getQRTypeFromContent(content), null, storedFormat(format));
+    }
+
+    // Split sets arrive a part or a few at a time, in any order; scanning carries on
+    // without the cooldown until every part has been seen. True if the frame held parts.
+    private boolean collectParts(List<String> rawValues) {
+        boolean sawPart = false;
+        for (String raw : rawValues) {
+            StructuredAppend.Part part = StructuredAppend.parse(raw);
+            if (part != null && isScanning) {
+                sawPart = true;
+                partAssembler.offer(part);
+            }
+        }
+        if (!sawPart || !isAdded()) return sawPart;
+
+        if (!partAssembler.isComplete()) {
+            showPartProgress();
+            return true;
+        }
+        String content = partAssembler.assemble();
+        partAssembler.reset();
+        showPartProgress();
+        if (content == null) {
+            Toast.makeText(requireContext(), "Parts don't belong together, rescan the set", Toast.LENGTH_SHORT).show();
+            return true;
+        }
+        ScanWarmup.recordFirstDecode();
+        isScanning = false;
+        lastScanTime = System.currentTimeMillis();
+        handleScannedCode(content, QRCodeUtils.getQRTypeFromContent(content), null, BarcodeFormat.QR_CODE);
+        return true;
+    }
+
+    private void showPartProgress() {
+        if (scanInstruction == null) return;
+        scanInstruction.setText(partAssembler.total() > 0
+            ? "Scanned " + partAssembler.received() + " of " + partAssembler.total() + " parts"
+            : DEFAULT_INSTRUCTION);
     }
 
     private void handleScannedCode(String content, Barcode barcode) {
-        String qrType = getQRType(barcode.getValueType(), content);
-        
+        handleScannedCode(content, getQRType(barcode.getValueType(), content), barcode,
+            storedFormat(barcode.getFormat()));
+    }
+
+    // barcode is null for a reassembled split set or a fallback decode, which have no ML Kit result
+    private void handleScannedCode(String content, String qrType, @Nullable Barcode barcode, BarcodeFormat format) {
         requireActivity().runOnUiThread(() -> {
-            showQRDetailDialog(content, qrType, barcode);
+            // Negatives come straight from the seen-before filter; positives are confirmed in the database
+            viewModel.checkSeen(content, seen -> {
+                if (isAdded()) {
+                    showQRDetailDialog(content, qrType, barcode, format, seen);
+                }
+            });
         });
     }
 
-    private void showQRDetailDialog(String content, String type, Barcode barcode) {
+    private void showQRDetailDialog(String content, String type, Barcode barcode, BarcodeFormat format,
+                                    boolean seenBefore) {
         View dialogView = getLayoutInflater().inflate(R.layout.dialog_qr_detail, null);
         
         MaterialAlertDialogBuilder builder = new MaterialAlertDialogBuilder(requireContext())
-            .setTitle("QR Code Scanned")
+            .setTitle(seenBefore ? "QR Code Scanned (already in history)" : "QR Code Scanned")
             .setView(dialogView)
             .setPositiveButton("Save", (dialog, which) -> {
-                saveQRCode(content, type);
+                saveQRCode(content, type, format);
                 isScanning = true; // Resume scanning
             })
             .setNegativeButton("Cancel", (dialog, which) -> {
@@ -203,7 +351,9 @@ public class ScanFragment extends Fragment {
         
         actionButtons.removeAllViews();
         
-        switch (type) {
+        // The parsed fields those actions need only come with a live ML Kit result
+        boolean parsed = barcode != null || type.equals("URL") || type.equals("WiFi");
+        switch (parsed ? type : "Text") {
             case "URL":
                 tvContent.setText(content);
                 addActionButton(actionButtons, "Open in Browser", () -> openUrl(content));
@@ -471,13 +621,28 @@ public class ScanFragment extends Fragment {
         Toast.makeText(requireContext(), "Copied to clipboard", Toast.LENGTH_SHORT).show();
     }
 
-    private void saveQRCode(String content, String type) {
+    private void saveQRCode(String content, String type, BarcodeFormat format) {
         QRItem item = new QRItem(content, type, System.currentTimeMillis());
         item.setGenerated(false);
+        item.setFormat(format.name());
         viewModel.insert(item);
         Toast.makeText(requireContext(), "Saved to history", Toast.LENGTH_SHORT).show();
     }
 
+    // Re-render scanned codes in their own symbology where we can encode it
+    private BarcodeFormat storedFormat(int mlKitFormat) {
+        switch (mlKitFormat) {
+            case Barcode.FORMAT_DATA_MATRIX: return BarcodeFormat.DATA_MATRIX;
+            case Barcode.FORMAT_AZTEC: return BarcodeFormat.AZTEC;
+            default: return BarcodeFormat.QR_CODE;
+        }
+    }
+
+    private BarcodeFormat storedFormat(BarcodeFormat zxingFormat) {
+        return zxingFormat == BarcodeFormat.DATA_MATRIX || zxingFormat == BarcodeFormat.AZTEC
+            ? zxingFormat : BarcodeFormat.QR_CODE;
+    }
+
     private String getQRType(int barcodeType, String content) {
         switch (barcodeType) {
             case Barcode.TYPE_URL: return "URL";
@@ -519,6 +684,23 @@ public class ScanFragment extends Fragment {
         isScanning = true;
     }
 
+    // The tab host hides this fragment instead of destroying it - pause the
+    // camera while hidden and resume it when the tab comes back
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        isScanning = !hidden;
+        if (hidden) {
+            // A half-scanned set is abandoned when the user leaves the tab
+            partAssembler.reset();
+            showPartProgress();
+            updateSeenBadge(null);
+        }
+        if (cameraLifecycleOwner != null) {
+            cameraLifecycleOwner.setVisible(!hidden);
+        }
+    }
+
     @Override
     public void onPause() {
         super.onPause();
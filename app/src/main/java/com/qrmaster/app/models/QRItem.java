@@ -1,9 +1,18 @@
 package com.qrmaster.app.models;
 
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
+import java.nio.charset.StandardCharsets;
 
-@Entity(tableName = "qr_items")
+@Entity(tableName = "qr_items",
+    indices = {
+        @Index(value = {"deletedAt", "timestamp"}),
+        @Index(value = {"isSaved", "deletedAt", "timestamp"}),
+        @Index(value = {"contentHash"})
+    })
 public class QRItem {
     @PrimaryKey(autoGenerate = true)
     private int id;
@@ -14,9 +23,20 @@ public class QRItem {
     private boolean isGenerated;
     private String colorForeground;
     private String colorBackground;
+    // 0 for live rows, otherwise the time the row was soft-deleted
+    @ColumnInfo(defaultValue = "0")
+    private long deletedAt;
+    // BarcodeFormat name the code is rendered as; see SymbologyRegistry
+    @NonNull
+    @ColumnInfo(defaultValue = "QR_CODE")
+    private String format = "QR_CODE";
+    // hashContent(content), kept in step by setContent; see SeenIndex
+    @ColumnInfo(defaultValue = "0")
+    private long contentHash;
 
     public QRItem(String content, String type, long timestamp) {
         this.content = content;
+        this.contentHash = hashContent(content);
         this.type = type;
         this.timestamp = timestamp;
         this.isSaved = false;
@@ -30,7 +50,10 @@ public class QRItem {
     public void setId(int id) { this.id = id; }
     
     public String getContent() { return content; }
-    public void setContent(String content) { this.content = content; }
+    public void setContent(String content) {
+        this.content = content;
+        this.contentHash = hashContent(content);
+    }
     
     public String getType() { return type; }
     public void setType(String type) { this.type = type; }
@@ -49,4 +72,25 @@ public class QRItem {
     
     public String getColorBackground() { return colorBackground; }
     public void setColorBackground(String color) { this.colorBackground = color; }
+    
+    public long getDeletedAt() { return deletedAt; }
+    public void setDeletedAt(long deletedAt) { this.deletedAt = deletedAt; }
+
+    @NonNull
+    public String getFormat() { return format; }
+    public void setFormat(@NonNull String format) { this.format = format; }
+
+    public long getContentHash() { return contentHash; }
+    public void setContentHash(long contentHash) { this.contentHash = contentHash; }
+
+    // 64-bit FNV-1a over the UTF-8 bytes. Stored in the table, so it must never change.
+    public static long hashContent(String content) {
+        long hash = 0xcbf29ce484222325L;
+        if (content == null) return hash;
+        for (byte b : content.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
 }
\ No newline at end of file
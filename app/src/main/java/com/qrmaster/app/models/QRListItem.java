@@ -0,0 +1,52 @@
+package com.qrmaster.app.models;
+
+// Lightweight row projection of qr_items for list screens. Content is cut to
+// a short prefix in SQL; load the full QRItem by id when it is actually needed.
+public class QRListItem {
+    public static final int PREVIEW_LENGTH = 200;
+
+    private int id;
+    private String type;
+    private long timestamp;
+    private boolean isSaved;
+    private boolean isGenerated;
+    private String colorForeground;
+    private String colorBackground;
+    private String format;
+    private String contentPreview;
+    private int contentLength;
+
+    // Getters and Setters
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+    public boolean isSaved() { return isSaved; }
+    public void setSaved(boolean saved) { isSaved = saved; }
+
+    public boolean isGenerated() { return isGenerated; }
+    public void setGenerated(boolean generated) { isGenerated = generated; }
+
+    public String getColorForeground() { return colorForeground; }
+    public void setColorForeground(String color) { this.colorForeground = color; }
+
+    public String getColorBackground() { return colorBackground; }
+    public void setColorBackground(String color) { this.colorBackground = color; }
+
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+
+    public String getContentPreview() { return contentPreview; }
+    public void setContentPreview(String preview) { this.contentPreview = preview; }
+
+    public int getContentLength() { return contentLength; }
+    public void setContentLength(int length) { this.contentLength = length; }
+
+    // True when contentPreview is only a prefix of the stored content
+    public boolean isTruncated() { return contentLength > PREVIEW_LENGTH; }
+}
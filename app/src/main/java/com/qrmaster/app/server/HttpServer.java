@@ -0,0 +1,588 @@
+// HttpServer.java - Small non-blocking HTTP/1.1 server for the LAN API
+package com.qrmaster.app.server;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One selector thread does all socket I/O; handlers run on a small worker pool
+// and hand their output back through a bounded per-connection queue, so a slow
+// client stalls its own handler instead of buffering the whole response.
+// Every response closes the connection.
+public class HttpServer {
+    private static final String TAG = "HttpServer";
+
+    // Sockets beyond this are answered with 503 and closed at once
+    public static final int MAX_CONNECTIONS = 16;
+    // Requests handled at the same time; a few more may wait, the rest get 503
+    private static final int WORKER_THREADS = 4;
+    private static final int WORKER_QUEUE = 8;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final long IDLE_TIMEOUT_MS = 15_000;
+    private static final long SWEEP_INTERVAL_MS = 1_000;
+    // How far a handler may run ahead of a slow client
+    private static final int MAX_QUEUED_BYTES = 64 * 1024;
+    public static final int CHUNK_SIZE = 8 * 1024;
+
+    private static final byte[] OVERLOADED = ("HTTP/1.1 503 Service Unavailable\r\n"
+        + "Retry-After: 1\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    public interface Handler {
+        // Runs on a worker thread. Sending nothing answers 404.
+        void handle(Request request, Response response) throws IOException;
+    }
+
+    private final Handler handler;
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ThreadPoolExecutor workers;
+    // Selector thread only
+    private final Set<Connection> connections = new HashSet<>();
+    // Connections with new output, picked up by the selector thread
+    private final ConcurrentLinkedQueue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong overloaded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    public HttpServer(Handler handler) {
+        this.handler = handler;
+    }
+
+    // Binds on the calling thread, so a port already in use is reported to the caller
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (running) return;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address, MAX_CONNECTIONS);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+            throw e;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(WORKER_QUEUE),
+            runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "qr-http-" + threadCount.incrementAndGet()));
+        workers.allowCoreThreadTimeOut(true);
+
+        running = true;
+        new Thread(this::loop, "qr-http-selector").start();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        workers.shutdownNow();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int openConnections() {
+        return open.get();
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                selector.select(SWEEP_INTERVAL_MS);
+                Connection pending;
+                while ((pending = pendingWrites.poll()) != null) {
+                    if (pending.key.isValid()) {
+                        pending.key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(connection);
+                        } else if (key.isWritable()) {
+                            write(connection);
+                        }
+                    } catch (IOException e) {
+                        if (connection != null) close(connection);
+                    } catch (RuntimeException e) {
+                        // One bad connection must not take the selector, and every other client, with it
+                        Log.w(TAG, "Dropping connection", e);
+                        if (connection != null) close(connection);
+                    }
+                }
+                closeIdle();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Selector failed", e);
+        } finally {
+            // However the loop ended, isRunning() must stop reporting a live server
+            running = false;
+            for (Connection connection : new ArrayList<>(connections)) {
+                close(connection);
+            }
+            workers.shutdownNow();
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (connections.size() >= MAX_CONNECTIONS) {
+                refused.incrementAndGet();
+                refuse(channel);
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            open.incrementAndGet();
+            accepted.incrementAndGet();
+        }
+    }
+
+    // Best effort - a fresh socket's send buffer always has room for this
+    private static void refuse(SocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            channel.write(ByteBuffer.wrap(OVERLOADED));
+        } catch (IOException e) {
+            // closing anyway
+        } finally {
+            closeQuietly(channel);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.in) < 0) {
+            close(connection);
+            return;
+        }
+        connection.lastActive = SystemClock.elapsedRealtime();
+        int end = headerEnd(connection.in);
+        if (end < 0) {
+            if (!connection.in.hasRemaining()) {
+                connection.key.interestOps(0);
+                respondNow(connection, 431, "Request headers too large");
+            }
+            return;
+        }
+
+        // One request per connection, so nothing more is read
+        connection.key.interestOps(0);
+        requests.incrementAndGet();
+        Request request = Request.parse(new String(connection.in.array(), 0, end, StandardCharsets.ISO_8859_1));
+        if (request == null) {
+            respondNow(connection, 400, "Bad request");
+        } else if (!request.method.equals("GET")) {
+            respondNow(connection, 405, "Only GET is supported");
+        } else {
+            try {
+                workers.execute(() -> serve(connection, request));
+            } catch (RejectedExecutionException e) {
+                overloaded.incrementAndGet();
+                connection.enqueue(ByteBuffer.wrap(OVERLOADED));
+                connection.finish();
+            }
+        }
+    }
+
+    // Index just past the blank line that ends the headers, or -1
+    private static int headerEnd(ByteBuffer in) {
+        byte[] data = in.array();
+        for (int i = 3; i < in.position(); i++) {
+            if (data[i] == '\n' && data[i - 1] == '\r' && data[i - 2] == '\n' && data[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // Small error bodies from the selector thread; they always fit the empty queue
+    private void respondNow(Connection connection, int status, String message) throws IOException {
+        new Response(connection).sendText(status, message);
+        connection.finish();
+    }
+
+    private void serve(Connection connection, Request request) {
+        Response response = new Response(connection);
+        try {
+            handler.handle(request, response);
+            response.end();
+        } catch (IOException e) {
+            // The client went away or stopped reading; nothing more can be sent
+            failed.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            Log.w(TAG, "Handler failed for " + request.path, e);
+            if (!response.isCommitted()) {
+                try {
+                    response.sendText(500, "Internal error");
+                } catch (IOException ignored) {
+                    // client already gone
+                }
+            }
+        } finally {
+            connection.finish();
+        }
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = connection.out.peek()) != null) {
+            bytesSent.addAndGet(connection.channel.write(buffer));
+            connection.lastActive = SystemClock.elapsedRealtime();
+            // Socket buffer full; OP_WRITE stays set until it drains
+            if (buffer.hasRemaining()) return;
+            connection.out.poll();
+            connection.dequeued(buffer.limit());
+        }
+        if (connection.finished) {
+            close(connection);
+        } else {
+            // Wait for the handler's next chunk
+            connection.key.interestOps(0);
+        }
+    }
+
+    private void closeIdle() {
+        long now = SystemClock.elapsedRealtime();
+        for (Connection connection : new ArrayList<>(connections)) {
+            if (now - connection.lastActive > IDLE_TIMEOUT_MS) {
+                close(connection);
+            }
+        }
+    }
+
+    private void close(Connection connection) {
+        if (!connections.remove(connection)) return;
+        open.decrementAndGet();
+        connection.key.cancel();
+        closeQuietly(connection.channel);
+        connection.markClosed();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    public String dumpStats() {
+        return String.format(Locale.US,
+            "port %d, open %d/%d\n  accepted %d, refused %d, requests %d, 503s %d, failed %d\n  sent %.1f KiB\n",
+            getPort(), open.get(), MAX_CONNECTIONS, accepted.get(), refused.get(), requests.get(),
+            overloaded.get(), failed.get(), bytesSent.get() / 1024.0);
+    }
+
+    private class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_HEADER_BYTES);
+        final ConcurrentLinkedQueue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        private final Object lock = new Object();
+        private int queued; // guarded by lock
+        private boolean closed; // guarded by lock
+        SelectionKey key;
+        volatile long lastActive = SystemClock.elapsedRealtime();
+        volatile boolean finished;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Handler side; blocks while the client is more than MAX_QUEUED_BYTES behind
+        void enqueue(ByteBuffer buffer) throws IOException {
+            synchronized (lock) {
+                while (queued > MAX_QUEUED_BYTES && !closed) {
+                    try {
+                        lock.wait(IDLE_TIMEOUT_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (closed) throw new IOException("Connection closed");
+                queued += buffer.remaining();
+            }
+            out.add(buffer);
+            requestWrite();
+        }
+
+        void dequeued(int bytes) {
+            synchronized (lock) {
+                queued -= bytes;
+                lock.notifyAll();
+            }
+        }
+
+        void markClosed() {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+        }
+
+        // Close once everything queued has been written
+        void finish() {
+            finished = true;
+            requestWrite();
+        }
+
+        private void requestWrite() {
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+    }
+
+    public static class Request {
+        public final String method;
+        public final String path;
+        private final Map<String, String> query;
+        private final Map<String, String> headers;
+
+        private Request(String method, String path, Map<String, String> query, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+        }
+
+        // Null when the parameter is absent
+        public String query(String name) {
+            return query.get(name);
+        }
+
+        // Header names are case-insensitive
+        public String header(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+
+        // Null for anything that isn't a well-formed request head
+        static Request parse(String head) {
+            String[] lines = head.split("\r\n");
+            if (lines.length == 0) return null;
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) return null;
+
+            String target = requestLine[1];
+            int question = target.indexOf('?');
+            Map<String, String> query = new HashMap<>();
+            try {
+                String path = decode(question < 0 ? target : target.substring(0, question));
+                if (question >= 0) {
+                    for (String pair : target.substring(question + 1).split("&")) {
+                        if (pair.isEmpty()) continue;
+                        int equals = pair.indexOf('=');
+                        query.put(decode(equals < 0 ? pair : pair.substring(0, equals)),
+                            equals < 0 ? "" : decode(pair.substring(equals + 1)));
+                    }
+                }
+
+                Map<String, String> headers = new HashMap<>();
+                for (int i = 1; i < lines.length; i++) {
+                    int colon = lines[i].indexOf(':');
+                    if (colon > 0) {
+                        headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.US),
+                            lines[i].substring(colon + 1).trim());
+                    }
+                }
+                return new Request(requestLine[0], path, query, headers);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        private static String decode(String value) {
+            try {
+                return URLDecoder.decode(value, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    public class Response {
+        private final Connection connection;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private boolean committed;
+        private ChunkedStream chunked;
+
+        private Response(Connection connection) {
+            this.connection = connection;
+        }
+
+        // Extra header for the response; call before sending
+        public Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        // contentType may be null for empty responses such as 304
+        public void send(int status, String contentType, byte[] body) throws IOException {
+            commit(status, contentType, "Content-Length: " + body.length);
+            if (body.length > 0) {
+                connection.enqueue(ByteBuffer.wrap(body));
+            }
+        }
+
+        public void sendText(int status, String message) throws IOException {
+            send(status, "text/plain; charset=utf-8", (message + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Body of unknown length, sent CHUNK_SIZE at a time as the handler writes it
+        public OutputStream startChunked(int status, String contentType) throws IOException {
+            commit(status, contentType, "Transfer-Encoding: chunked");
+            chunked = new ChunkedStream(connection);
+            return chunked;
+        }
+
+        void end() throws IOException {
+            if (!committed) {
+                sendText(404, "Not found");
+            } else if (chunked != null) {
+                chunked.close();
+            }
+        }
+
+        private void commit(int status, String contentType, String lengthHeader) throws IOException {
+            if (committed) throw new IllegalStateException("Response already started");
+            committed = true;
+            StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(' ')
+                .append(reason(status)).append("\r\n");
+            if (contentType != null) {
+                head.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            head.append(lengthHeader).append("\r\n");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+            head.append("Connection: close\r\n\r\n");
+            connection.enqueue(ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1)));
+        }
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 431: return "Request Header Fields Too Large";
+            case 503: return "Service Unavailable";
+            default: return status >= 500 ? "Internal Server Error" : "Unknown";
+        }
+    }
+
+    private static class ChunkedStream extends OutputStream {
+        private final Connection connection;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private boolean closed;
+
+        ChunkedStream(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) flush();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) flush();
+                int n = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        // Sends what is buffered as one chunk
+        @Override
+        public void flush() throws IOException {
+            if (count == 0 || closed) return;
+            byte[] size = (Integer.toHexString(count) + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            ByteBuffer chunk = ByteBuffer.allocate(size.length + count + 2);
+            chunk.put(size).put(buffer, 0, count).put((byte) '\r').put((byte) '\n');
+            chunk.flip();
+            count = 0;
+            connection.enqueue(chunk);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            flush();
+            closed = true;
+            connection.enqueue(ByteBuffer.wrap("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+        }
+    }
+}
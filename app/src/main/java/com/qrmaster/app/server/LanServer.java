@@ -0,0 +1,127 @@
+// LanServer.java - Starts and stops the history API for desktop tools on the same network
+package com.qrmaster.app.server;
+
+import android.content.Context;
+import com.qrmaster.app.data.HistoryApi;
+import com.qrmaster.app.data.QRDatabase;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Locale;
+
+// History is private, so every request must carry the token shown when the
+// server starts, as ?token= or "Authorization: Bearer <token>". It changes on
+// every start. The server lives as long as the process or until stopped.
+public final class LanServer {
+    public static final int PORT = 8080;
+
+    private static LanServer instance;
+
+    private final Context appContext;
+    // Shared by every server instance, so its cache survives restarts
+    private final QrApi qrApi = new QrApi();
+    private HttpServer server;
+    private String token;
+
+    private LanServer(Context context) {
+        this.appContext = context.getApplicationContext();
+    }
+
+    public static synchronized LanServer get(Context context) {
+        if (instance == null) {
+            instance = new LanServer(context);
+        }
+        return instance;
+    }
+
+    public synchronized void start() throws IOException {
+        if (isRunning()) return;
+        String newToken = newToken();
+        HttpServer newServer = new HttpServer(router(newToken));
+        newServer.start(new InetSocketAddress(PORT));
+        server = newServer;
+        token = newToken;
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null && server.isRunning();
+    }
+
+    // Address to type on the desktop, or null when the device has no LAN address
+    public synchronized String url() {
+        String host = lanAddress();
+        return host == null || !isRunning() ? null
+            : "http://" + host + ":" + server.getPort() + "/items?token=" + token;
+    }
+
+    private HttpServer.Handler router(String token) {
+        return router(new HistoryApi(QRDatabase.getInstance(appContext)), qrApi, token);
+    }
+
+    // Package-private so tests can route to their own database and cache
+    static HttpServer.Handler router(HistoryApi history, QrApi qrApi, String token) {
+        return (request, response) -> {
+            if (!authorized(request, token)) {
+                response.sendText(401, "Missing or wrong token");
+            } else if (!history.handle(request, response) && !qrApi.handle(request, response)) {
+                response.sendText(404, "Not found");
+            }
+        };
+    }
+
+    private static boolean authorized(HttpServer.Request request, String token) {
+        String presented = request.query("token");
+        String authorization = request.header("Authorization");
+        if (presented == null && authorization != null && authorization.startsWith("Bearer ")) {
+            presented = authorization.substring("Bearer ".length()).trim();
+        }
+        // Constant time, so the token can't be guessed a character at a time
+        return presented != null && MessageDigest.isEqual(
+            presented.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[8];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format(Locale.US, "%02x", b));
+        }
+        return hex.toString();
+    }
+
+    // First site-local IPv4 address, which is what Wi-Fi and USB tethering hand out
+    private static String lanAddress() {
+        try {
+            for (NetworkInterface network : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!network.isUp() || network.isLoopback()) continue;
+                for (InetAddress address : Collections.list(network.getInetAddresses())) {
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        return address.getHostAddress();
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            // treated as no address
+        }
+        return null;
+    }
+
+    public synchronized String dumpStats() {
+        return (isRunning() ? server.dumpStats() : "stopped\n") + "/qr " + qrApi.dumpStats();
+    }
+}
@@ -0,0 +1,264 @@
+// QrApi.java - GET /qr for the LAN server: cached, bounded QR rendering
+package com.qrmaster.app.server;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+import com.google.zxing.WriterException;
+import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.utils.Metrics;
+import com.qrmaster.app.utils.QRCodeUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// GET /qr?data=TEXT&size=PX&fg=RRGGBB&bg=RRGGBB&format=png|svg
+// The output depends only on the normalized parameters, so the ETag is a hash
+// of those and a 304 costs no rendering. Identical requests in flight share
+// one render.
+public class QrApi {
+    private static final int DEFAULT_SIZE = 512;
+    private static final int MIN_SIZE = 64;
+    private static final int MAX_SIZE = 2048;
+    private static final int MAX_DATA_CHARS = 2048;
+    // Bump when the renderer's output changes, so clients drop their copies
+    private static final int RENDER_VERSION = 1;
+
+    // Renders running at once, plus a short queue; past that the answer is 503.
+    // Kept below HttpServer's worker count, so renders can never hold every
+    // worker and history requests always find one free.
+    private static final int RENDER_THREADS = 2;
+    private static final int RENDER_QUEUE = 1;
+    private static final long RENDER_TIMEOUT_MS = 5000;
+    private static final int CACHE_BYTES = 4 * 1024 * 1024;
+
+    private final ThreadPoolExecutor renderPool;
+    private final Map<String, FutureTask<byte[]>> inFlight = new ConcurrentHashMap<>();
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private int cacheBytes; // guarded by cache
+
+    // Registry counters, so the hit rate also lands in metrics snapshots
+    private final Metrics.Counter hits = Metrics.counter("cache.qr_http.hit");
+    private final Metrics.Counter misses = Metrics.counter("cache.qr_http.miss");
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+    private final AtomicLong renderNanos = new AtomicLong();
+
+    public QrApi() {
+        AtomicInteger threadCount = new AtomicInteger();
+        renderPool = new ThreadPoolExecutor(RENDER_THREADS, RENDER_THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(RENDER_QUEUE),
+            runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "qr-http-render-" + threadCount.incrementAndGet()));
+        renderPool.allowCoreThreadTimeOut(true);
+    }
+
+    private static class Params {
+        String data;
+        int size;
+        String fg;
+        String bg;
+        boolean svg;
+
+        String key() {
+            return RENDER_VERSION + "|" + (svg ? "svg" : "png") + "|" + size + "|" + fg + "|" + bg + "|" + data;
+        }
+
+        String contentType() {
+            return svg ? "image/svg+xml" : "image/png";
+        }
+    }
+
+    // False if the path isn't /qr
+    public boolean handle(HttpServer.Request request, HttpServer.Response response) throws IOException {
+        if (!request.path.equals("/qr")) return false;
+
+        Params params;
+        try {
+            params = parse(request);
+        } catch (IllegalArgumentException e) {
+            response.sendText(400, e.getMessage());
+            return true;
+        }
+
+        String key = params.key();
+        String etag = "\"" + Long.toHexString(QRItem.hashContent(key)) + "\"";
+        if (matches(request.header("If-None-Match"), etag)) {
+            notModified.incrementAndGet();
+            cacheable(response, etag).send(304, null, new byte[0]);
+            return true;
+        }
+
+        byte[] body = cached(key);
+        if (body != null) {
+            hits.inc();
+        } else {
+            misses.inc();
+            try {
+                body = render(key, params);
+            } catch (RejectedExecutionException | TimeoutException e) {
+                rejected.incrementAndGet();
+                response.header("Retry-After", "1").sendText(503, "Too many renders, try again");
+                return true;
+            } catch (WriterException e) {
+                response.sendText(400, "Can't encode: " + e.getMessage());
+                return true;
+            }
+        }
+        cacheable(response, etag).send(200, params.contentType(), body);
+        return true;
+    }
+
+    // Only for an image the client actually has; a cached 503 or 400 would stick for a day
+    private static HttpServer.Response cacheable(HttpServer.Response response, String etag) {
+        return response.header("ETag", etag).header("Cache-Control", "public, max-age=86400");
+    }
+
+    private static Params parse(HttpServer.Request request) {
+        Params params = new Params();
+        params.data = request.query("data");
+        if (params.data == null || params.data.isEmpty()) throw new IllegalArgumentException("Missing data");
+        if (params.data.length() > MAX_DATA_CHARS) {
+            throw new IllegalArgumentException("data is longer than " + MAX_DATA_CHARS + " characters");
+        }
+        String size = request.query("size");
+        try {
+            params.size = size == null ? DEFAULT_SIZE : Integer.parseInt(size);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("size must be a number");
+        }
+        if (params.size < MIN_SIZE || params.size > MAX_SIZE) {
+            throw new IllegalArgumentException("size must be " + MIN_SIZE + " to " + MAX_SIZE);
+        }
+        params.fg = color(request.query("fg"), "#000000");
+        params.bg = color(request.query("bg"), "#FFFFFF");
+        String format = request.query("format");
+        if (format != null && !format.equals("png") && !format.equals("svg")) {
+            throw new IllegalArgumentException("format must be png or svg");
+        }
+        params.svg = "svg".equals(format);
+        return params;
+    }
+
+    // "#" is awkward in a URL, so it is optional; the result is always #RRGGBB
+    private static String color(String value, String fallback) {
+        if (value == null || value.isEmpty()) return fallback;
+        String hex = value.startsWith("#") ? value.substring(1) : value;
+        if (!hex.matches("[0-9a-fA-F]{6}")) throw new IllegalArgumentException("Colours are RRGGBB hex");
+        return "#" + hex.toUpperCase(Locale.US);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag) || tag.equals("*")) return true;
+        }
+        return false;
+    }
+
+    // Throws RejectedExecutionException when the pool and its queue are full
+    private byte[] render(String key, Params params) throws WriterException, TimeoutException, IOException {
+        // Cached by the task itself, so a render that outlives a timed-out request isn't wasted
+        FutureTask<byte[]> task = new FutureTask<byte[]>(() -> {
+            byte[] body = renderNow(params);
+            store(key, body);
+            return body;
+        }) {
+            @Override
+            protected void done() {
+                inFlight.remove(key, this);
+            }
+        };
+        FutureTask<byte[]> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                renderPool.execute(task);
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(key, task);
+                throw e;
+            }
+            running = task;
+        }
+
+        try {
+            return running.get(RENDER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof WriterException) throw (WriterException) e.getCause();
+            throw new IOException("Render failed", e.getCause());
+        }
+    }
+
+    private byte[] renderNow(Params params) throws WriterException {
+        long start = System.nanoTime();
+        byte[] body;
+        if (params.svg) {
+            body = QRCodeUtils.generateQRCodeSvg(params.data, params.size, params.fg, params.bg)
+                .getBytes(StandardCharsets.UTF_8);
+        } else {
+            Bitmap bitmap = QRCodeUtils.generateQRCode(params.data, params.size, params.fg, params.bg);
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+            bitmap.recycle();
+            body = png.toByteArray();
+        }
+        renders.incrementAndGet();
+        renderNanos.addAndGet(System.nanoTime() - start);
+        return body;
+    }
+
+    private byte[] cached(String key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private void store(String key, byte[] body) {
+        if (body.length > CACHE_BYTES / 4) return;
+        synchronized (cache) {
+            byte[] previous = cache.put(key, body);
+            cacheBytes += body.length - (previous != null ? previous.length : 0);
+            Iterator<byte[]> eldest = cache.values().iterator();
+            while (cacheBytes > CACHE_BYTES && eldest.hasNext()) {
+                cacheBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    public String dumpStats() {
+        int entries;
+        int bytes;
+        synchronized (cache) {
+            entries = cache.size();
+            bytes = cacheBytes;
+        }
+        long lookups = Math.max(1, hits.get() + misses.get());
+        return String.format(Locale.US,
+            "cache %d entries, %d KiB of %d, hit rate %.1f%%\n  304s %d, 503s %d, renders %d (avg %.2f ms)\n",
+            entries, bytes / 1024, CACHE_BYTES / 1024, hits.get() * 100.0 / lookups,
+            notModified.get(), rejected.get(), renders.get(),
+            renderNanos.get() / 1e6 / Math.max(1, renders.get()));
+    }
+}
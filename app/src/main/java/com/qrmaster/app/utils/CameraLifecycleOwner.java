@@ -0,0 +1,53 @@
+// CameraLifecycleOwner.java - Lifecycle for CameraX that also follows fragment visibility
+package com.qrmaster.app.utils;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+// Mirrors the host's lifecycle but drops to CREATED while hidden. CameraX then
+// closes the camera without unbinding the use cases, and reopens it on show.
+public class CameraLifecycleOwner implements LifecycleOwner, LifecycleEventObserver {
+    private final LifecycleRegistry registry = new LifecycleRegistry(this);
+    private Lifecycle.State hostState;
+    private boolean visible = true;
+
+    public CameraLifecycleOwner(LifecycleOwner host) {
+        hostState = host.getLifecycle().getCurrentState();
+        host.getLifecycle().addObserver(this);
+    }
+
+    @NonNull
+    @Override
+    public Lifecycle getLifecycle() {
+        return registry;
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        hostState = source.getLifecycle().getCurrentState();
+        if (hostState == Lifecycle.State.DESTROYED) {
+            source.getLifecycle().removeObserver(this);
+        }
+        update();
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+        update();
+    }
+
+    private void update() {
+        if (registry.getCurrentState() == Lifecycle.State.DESTROYED) return;
+
+        Lifecycle.State target = hostState;
+        if (!visible && target.isAtLeast(Lifecycle.State.STARTED)) {
+            target = Lifecycle.State.CREATED;
+        }
+        if (target != Lifecycle.State.INITIALIZED) {
+            registry.setCurrentState(target);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+// DebugStats.java - Debug dialog with live metrics, scheduler and scan statistics
+package com.qrmaster.app.utils;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.appcompat.app.AlertDialog;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.qrmaster.app.TaskScheduler;
+import com.qrmaster.app.data.QRDatabase;
+import com.qrmaster.app.data.SeenIndex;
+import com.qrmaster.app.server.LanServer;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DebugStats {
+
+    public static void show(Context context) {
+        TextView statsText = new TextView(context);
+        statsText.setTypeface(Typeface.MONOSPACE);
+        statsText.setTextIsSelectable(true);
+        statsText.setPadding(48, 24, 48, 24);
+        // The database benchmark builds two scratch databases, so it runs once per dialog
+        // rather than on every refresh
+        AtomicReference<String> dbBenchmark = new AtomicReference<>();
+        refresh(context.getApplicationContext(), statsText, dbBenchmark);
+
+        ScrollView scrollView = new ScrollView(context);
+        scrollView.addView(statsText);
+
+        AlertDialog dialog = new MaterialAlertDialogBuilder(context)
+            .setTitle("Performance Stats")
+            .setView(scrollView)
+            .setPositiveButton("Refresh", null)
+            .setNeutralButton("Save JSON", null)
+            .setNegativeButton("Close", null)
+            .show();
+
+        // Refresh and save without dismissing the dialog
+        dialog.getButton(AlertDialog.BUTTON_POSITIVE)
+            .setOnClickListener(v -> refresh(context.getApplicationContext(), statsText, dbBenchmark));
+        dialog.getButton(AlertDialog.BUTTON_NEUTRAL)
+            .setOnClickListener(v -> saveMetrics(context.getApplicationContext()));
+    }
+
+    private static void saveMetrics(Context appContext) {
+        TaskScheduler scheduler = TaskScheduler.get();
+        boolean queued = scheduler.execute(TaskScheduler.Lane.EXPORT, () -> {
+            String message;
+            try {
+                File file = Metrics.writeSnapshot(appContext);
+                message = "Metrics saved to " + file.getAbsolutePath();
+            } catch (IOException e) {
+                message = "Could not save metrics: " + e.getMessage();
+            }
+            String toast = message;
+            scheduler.postToMain(() -> Toast.makeText(appContext, toast, Toast.LENGTH_LONG).show());
+        });
+        if (!queued) {
+            Toast.makeText(appContext, "Another export is still running", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // The benchmarks take a moment, so they run off the main thread
+    private static void refresh(Context appContext, TextView statsText, AtomicReference<String> dbBenchmark) {
+        statsText.setText("Measuring…");
+        TaskScheduler scheduler = TaskScheduler.get();
+        scheduler.execute(TaskScheduler.Lane.MAINTENANCE, () -> {
+            String stats = collect(appContext, dbBenchmark);
+            scheduler.postToMain(() -> statsText.setText(stats));
+        });
+    }
+
+    private static String collect(Context appContext, AtomicReference<String> dbBenchmark) {
+        LanServer server = LanServer.get(appContext);
+        // Taken first, before the checks and benchmarks below add their own samples
+        String metrics = Metrics.dumpStats();
+        // Only the maintenance lane runs collect, so two refreshes can't both measure
+        if (dbBenchmark.get() == null) {
+            dbBenchmark.set(QRDatabase.benchmark(appContext));
+        }
+        return "Metrics\n\n" + metrics
+            + "\nScheduler lanes\n\n" + TaskScheduler.get().dumpStats()
+            + "\nScan fallback (ZXing after ML Kit misses)\n\n" + ScanFallback.dumpStats()
+            + "\nSeen-before index\n\n" + SeenIndex.dumpStats()
+            + "\nLAN server\n\n" + server.dumpStats()
+            + "\nHistory reads during bulk insert\n\n" + dbBenchmark.get()
+            + "\nQR encoding (default vs compact)\n\n" + QREncoder.benchmark()
+            + "\nQR rendering (per-pixel vs path)\n\n" + QRStyleRenderer.benchmark();
+    }
+}
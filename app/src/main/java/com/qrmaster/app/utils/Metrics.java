@@ -0,0 +1,206 @@
+// Metrics.java - Process-wide counters, gauges and latency histograms for hot paths
+package com.qrmaster.app.utils;
+
+import android.content.Context;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Look a metric up once and keep it in a static final field: recording is then
+// a LongAdder increment (plus a bucket scan for histograms), with no map lookup
+// and no lock, so it is safe on the camera and render paths.
+public final class Metrics {
+    // Histogram bucket upper bounds in microseconds; one more bucket takes the rest
+    private static final long[] BOUNDS_MICROS = {
+        50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000
+    };
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    // Fixed buckets, so recording never allocates and snapshots never block writers
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = 0;
+            while (bucket < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sumNanos.add(nanos);
+            long current;
+            while (nanos > (current = maxNanos.get()) && !maxNanos.compareAndSet(current, nanos)) {
+                // retry
+            }
+        }
+
+        // For timing a block: long start = System.nanoTime(); ... recordSince(start)
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        private long[] counts() {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+
+        // Upper bound of the bucket holding the quantile; the max for the open bucket
+        private static double percentileMs(long[] counts, long total, long maxNanos, double quantile) {
+            if (total == 0) return 0;
+            long target = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+                seen += counts[i];
+                if (seen >= target) return Math.min(BOUNDS_MICROS[i] / 1000.0, maxNanos / 1e6);
+            }
+            return maxNanos / 1e6;
+        }
+    }
+
+    private Metrics() {}
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    // Read only when a snapshot is taken; registering the same name replaces it
+    public static void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public static JSONObject snapshot() throws JSONException {
+        JSONObject counterJson = new JSONObject();
+        for (Map.Entry<String, Counter> counter : new TreeMap<>(counters).entrySet()) {
+            counterJson.put(counter.getKey(), counter.getValue().get());
+        }
+        JSONObject gaugeJson = new JSONObject();
+        for (Map.Entry<String, LongSupplier> gauge : new TreeMap<>(gauges).entrySet()) {
+            gaugeJson.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        JSONObject histogramJson = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long[] counts = histogram.counts();
+            long total = sum(counts);
+            long max = histogram.maxNanos.get();
+            JSONArray buckets = new JSONArray();
+            for (int i = 0; i < counts.length; i++) {
+                buckets.put(new JSONObject()
+                    .put("le_ms", i < BOUNDS_MICROS.length ? BOUNDS_MICROS[i] / 1000.0 : "+Inf")
+                    .put("count", counts[i]));
+            }
+            histogramJson.put(entry.getKey(), new JSONObject()
+                .put("count", total)
+                .put("sum_ms", histogram.sumNanos.sum() / 1e6)
+                .put("max_ms", max / 1e6)
+                .put("p50_ms", Histogram.percentileMs(counts, total, max, 0.50))
+                .put("p90_ms", Histogram.percentileMs(counts, total, max, 0.90))
+                .put("p99_ms", Histogram.percentileMs(counts, total, max, 0.99))
+                .put("buckets", buckets));
+        }
+        return new JSONObject()
+            .put("timestamp", System.currentTimeMillis())
+            .put("counters", counterJson)
+            .put("gauges", gaugeJson)
+            .put("histograms", histogramJson);
+    }
+
+    // Written to the app's external files dir, so `adb pull` can reach it without root
+    public static File writeSnapshot(Context context) throws IOException {
+        File dir = context.getExternalFilesDir("metrics");
+        if (dir == null) {
+            dir = new File(context.getFilesDir(), "metrics");
+        }
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(dir, "metrics-" + stamp + ".json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(snapshot().toString(2));
+        } catch (JSONException e) {
+            throw new IOException("Snapshot failed", e);
+        }
+        return file;
+    }
+
+    public static String dumpStats() {
+        StringBuilder out = new StringBuilder("counters\n");
+        for (Map.Entry<String, Counter> counter : new TreeMap<>(counters).entrySet()) {
+            out.append(String.format(Locale.US, "  %s %d\n", counter.getKey(), counter.getValue().get()));
+        }
+        out.append("gauges\n");
+        for (Map.Entry<String, LongSupplier> gauge : new TreeMap<>(gauges).entrySet()) {
+            out.append(String.format(Locale.US, "  %s %d\n", gauge.getKey(), gauge.getValue().getAsLong()));
+        }
+        out.append("histograms (ms; percentiles are bucket bounds)\n");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long[] counts = histogram.counts();
+            long total = sum(counts);
+            long max = histogram.maxNanos.get();
+            out.append(String.format(Locale.US,
+                "  %s\n    n %d, avg %.2f, p50 ≤%.2f, p90 ≤%.2f, p99 ≤%.2f, max %.2f\n",
+                entry.getKey(), total, histogram.sumNanos.sum() / 1e6 / Math.max(1, total),
+                Histogram.percentileMs(counts, total, max, 0.50),
+                Histogram.percentileMs(counts, total, max, 0.90),
+                Histogram.percentileMs(counts, total, max, 0.99), max / 1e6));
+        }
+        return out.toString();
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
@@ -8,8 +8,6 @@ import android.media.MediaScannerConnection;
 import android.os.Environment;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -22,21 +20,14 @@ public class QRCodeUtils {
     
     public static Bitmap generateQRCode(String content, int size, String fgColor, String bgColor) 
             throws WriterException {
-        QRCodeWriter writer = new QRCodeWriter();
-        BitMatrix bitMatrix = writer.encode(content, BarcodeFormat.QR_CODE, size, size);
-        
-        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.RGB_565);
-        
-        int fg = Color.parseColor(fgColor);
-        int bg = Color.parseColor(bgColor);
-        
-        for (int x = 0; x < size; x++) {
-            for (int y = 0; y < size; y++) {
-                bitmap.setPixel(x, y, bitMatrix.get(x, y) ? fg : bg);
-            }
-        }
-        
-        return bitmap;
+        Symbol symbol = SymbologyRegistry.encode(content, getQRTypeFromContent(content), BarcodeFormat.QR_CODE, false);
+        return symbol.toBitmap(size, Color.parseColor(fgColor), Color.parseColor(bgColor));
+    }
+    
+    public static String generateQRCodeSvg(String content, int size, String fgColor, String bgColor)
+            throws WriterException {
+        Symbol symbol = SymbologyRegistry.encode(content, getQRTypeFromContent(content), BarcodeFormat.QR_CODE, false);
+        return symbol.toSvg(size, fgColor, bgColor);
     }
     
     public static boolean saveQRToGallery(Context context, Bitmap bitmap, String fileName) {
@@ -0,0 +1,183 @@
+// QREncoder.java - Picks compact QR encodings and reports version and remaining capacity
+package com.qrmaster.app.utils;
+
+import android.os.SystemClock;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Mode;
+import com.google.zxing.qrcode.decoder.Version;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class QREncoder {
+    public static final int QUIET_ZONE = 4;
+    private static final int MAX_VERSION = 40;
+    // Tried strongest first when looking for spare room in the chosen version
+    private static final ErrorCorrectionLevel[] STRONGER_FIRST = {
+        ErrorCorrectionLevel.H, ErrorCorrectionLevel.Q, ErrorCorrectionLevel.M
+    };
+
+    private static final String[] BENCHMARK_SAMPLES = {
+        "HTTPS://EXAMPLE.COM/PRODUCT/0012345678",
+        "tel:+15551234567",
+        "WIFI:T:WPA;S:HomeNetwork;P:correcthorsebattery;;",
+        "4006381333931 4006381333948 4006381333955",
+        "BEGIN:VCARD\nVERSION:3.0\nFN:Jane Doe\nTEL:+15551234567\nEMAIL:jane@example.com\nEND:VCARD",
+        "Grüße aus München – 東京",
+    };
+    private static final int BENCHMARK_RUNS = 20;
+
+    public static class Result {
+        public final QRCode code;
+        public final ErrorCorrectionLevel ecLevel;
+        public final int version;
+        public final int modules;
+        // Data bits the payload takes, including mode and length headers
+        public final int usedBits;
+        // Bytes that still fit before the symbol grows to the next version
+        public final int bytesLeftInVersion;
+        // Bytes that still fit before the payload is too big for any QR code
+        public final int bytesLeftTotal;
+        public final int maxBytes;
+
+        Result(QRCode code, int usedBits, ErrorCorrectionLevel ecLevel) {
+            this.code = code;
+            this.ecLevel = ecLevel;
+            this.version = code.getVersion().getVersionNumber();
+            this.modules = code.getMatrix().getWidth();
+            this.usedBits = usedBits;
+            this.bytesLeftInVersion = Math.max(0, (dataBits(code.getVersion(), ecLevel) - usedBits) / 8);
+            Version largest = Version.getVersionForNumber(MAX_VERSION);
+            this.maxBytes = dataBits(largest, ecLevel) / 8;
+            // Length headers are up to 8 bits wider at version 40
+            this.bytesLeftTotal = Math.max(0, (dataBits(largest, ecLevel) - usedBits - 8) / 8);
+        }
+    }
+
+    // Smallest symbol for the payload, then the strongest error correction that still fits in it
+    public static Result encodeFor(String content, String type) throws WriterException {
+        return encodeFor(content, type, ErrorCorrectionLevel.L);
+    }
+
+    // floor raises the minimum level, e.g. to H when a logo will cover part of the symbol
+    public static Result encodeFor(String content, String type, ErrorCorrectionLevel floor)
+            throws WriterException {
+        Charset charset = charsetFor(content);
+        ErrorCorrectionLevel minimum = minimumLevelFor(type);
+        if (floor.ordinal() > minimum.ordinal()) {
+            minimum = floor;
+        }
+        Result best = encode(content, minimum, charset, true);
+        for (ErrorCorrectionLevel level : STRONGER_FIRST) {
+            if (level.ordinal() <= best.ecLevel.ordinal()) continue;
+            Result stronger = encode(content, level, charset, true);
+            if (stronger.version <= best.version) {
+                return stronger;
+            }
+        }
+        return best;
+    }
+
+    // Same settings QRCodeWriter uses with no hints: one segment mode, Latin-1, level L
+    public static Result encodeDefault(String content) throws WriterException {
+        return encode(content, ErrorCorrectionLevel.L, null, false);
+    }
+
+    // charset null keeps ZXing's default (ISO-8859-1, no ECI header). compact lets
+    // ZXing mix numeric, alphanumeric and byte segments instead of one mode for all.
+    public static Result encode(String content, ErrorCorrectionLevel ecLevel, Charset charset, boolean compact)
+            throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        if (charset != null) {
+            hints.put(EncodeHintType.CHARACTER_SET, charset.name());
+        }
+        if (compact) {
+            hints.put(EncodeHintType.QR_COMPACT, Boolean.TRUE);
+        }
+        QRCode code = Encoder.encode(content, ecLevel, hints);
+        return new Result(code, usedBits(content, code.getVersion(), charset), ecLevel);
+    }
+
+    // Printed codes (Wi-Fi, contacts, payments, links) get at least M so a scuff doesn't break them
+    private static ErrorCorrectionLevel minimumLevelFor(String type) {
+        if (type == null) return ErrorCorrectionLevel.L;
+        switch (type) {
+            case "URL":
+            case "WiFi":
+            case "Contact":
+            case "Payment":
+                return ErrorCorrectionLevel.M;
+            default:
+                return ErrorCorrectionLevel.L;
+        }
+    }
+
+    // Latin-1 needs no ECI header and every reader assumes it; anything else goes out as UTF-8
+    static Charset charsetFor(String content) {
+        return StandardCharsets.ISO_8859_1.newEncoder().canEncode(content) ? null : StandardCharsets.UTF_8;
+    }
+
+    // Default encoding vs encodeFor on fixed samples, for the debug stats screen
+    public static String benchmark() {
+        StringBuilder out = new StringBuilder();
+        for (String sample : BENCHMARK_SAMPLES) {
+            String type = QRCodeUtils.getQRTypeFromContent(sample);
+            try {
+                long start = SystemClock.elapsedRealtimeNanos();
+                Result plain = null;
+                for (int i = 0; i < BENCHMARK_RUNS; i++) plain = encodeDefault(sample);
+                long plainNanos = (SystemClock.elapsedRealtimeNanos() - start) / BENCHMARK_RUNS;
+
+                start = SystemClock.elapsedRealtimeNanos();
+                Result tuned = null;
+                for (int i = 0; i < BENCHMARK_RUNS; i++) tuned = encodeFor(sample, type);
+                long tunedNanos = (SystemClock.elapsedRealtimeNanos() - start) / BENCHMARK_RUNS;
+
+                out.append(String.format(Locale.US,
+                    "%s (%d chars)\n  default v%d %d×%d %s  %.2f ms\n  compact v%d %d×%d %s  %.2f ms\n",
+                    type, sample.length(),
+                    plain.version, plain.modules, plain.modules, plain.ecLevel, plainNanos / 1e6,
+                    tuned.version, tuned.modules, tuned.modules, tuned.ecLevel, tunedNanos / 1e6));
+            } catch (WriterException e) {
+                out.append(type).append(": ").append(e.getMessage()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static int dataBits(Version version, ErrorCorrectionLevel ecLevel) {
+        return (version.getTotalCodewords() - version.getECBlocksForLevel(ecLevel).getTotalECCodewords()) * 8;
+    }
+
+    // Single-segment size. With mixed segments the real payload is the same or smaller,
+    // so the capacity figures are a safe lower bound.
+    private static int usedBits(String content, Version version, Charset charset) {
+        Mode mode = charset != null ? Mode.BYTE : Encoder.chooseMode(content);
+        int bits = 4 + mode.getCharacterCountBits(version);
+        int length = content.length();
+        switch (mode) {
+            case NUMERIC:
+                bits += 10 * (length / 3) + (length % 3 == 1 ? 4 : length % 3 == 2 ? 7 : 0);
+                break;
+            case ALPHANUMERIC:
+                bits += 11 * (length / 2) + 6 * (length % 2);
+                break;
+            case KANJI:
+                bits += 13 * length;
+                break;
+            default:
+                if (charset != null) {
+                    bits += 12; // ZXing writes an ECI designator whenever a charset is given
+                }
+                bits += 8 * content.getBytes(charset != null ? charset : StandardCharsets.ISO_8859_1).length;
+                break;
+        }
+        return bits;
+    }
+}
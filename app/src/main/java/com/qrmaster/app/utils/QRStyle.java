@@ -0,0 +1,56 @@
+// QRStyle.java - Immutable look of a rendered QR code
+package com.qrmaster.app.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+public class QRStyle {
+    public enum ModuleShape { SQUARE, ROUNDED, DOTS }
+    public enum FinderShape { SQUARE, ROUNDED, CIRCLE }
+
+    public static final QRStyle PLAIN = new QRStyle(ModuleShape.SQUARE, FinderShape.SQUARE,
+        Color.BLACK, Color.BLACK, Color.WHITE, null);
+
+    public final ModuleShape moduleShape;
+    public final FinderShape finderShape;
+    public final int foreground;
+    // Same as foreground for a solid fill; otherwise a diagonal gradient towards this colour
+    public final int gradientEnd;
+    public final int background;
+    public final Bitmap logo;
+
+    public QRStyle(ModuleShape moduleShape, FinderShape finderShape,
+                   int foreground, int gradientEnd, int background, Bitmap logo) {
+        this.moduleShape = moduleShape;
+        this.finderShape = finderShape;
+        this.foreground = foreground;
+        this.gradientEnd = gradientEnd;
+        this.background = background;
+        this.logo = logo;
+    }
+
+    public boolean hasGradient() {
+        return gradientEnd != foreground;
+    }
+
+    public boolean hasLogo() {
+        return logo != null;
+    }
+
+    public QRStyle withShapes(ModuleShape moduleShape, FinderShape finderShape) {
+        return new QRStyle(moduleShape, finderShape, foreground, gradientEnd, background, logo);
+    }
+
+    public QRStyle withColors(int foreground, int gradientEnd, int background) {
+        return new QRStyle(moduleShape, finderShape, foreground, gradientEnd, background, logo);
+    }
+
+    public QRStyle withLogo(Bitmap logo) {
+        return new QRStyle(moduleShape, finderShape, foreground, gradientEnd, background, logo);
+    }
+
+    // Only what changes the module geometry - colours are applied at draw time
+    String shapeKey() {
+        return moduleShape + "/" + finderShape + (hasLogo() ? "/logo" : "");
+    }
+}
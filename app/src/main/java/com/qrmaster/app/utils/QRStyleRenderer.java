@@ -0,0 +1,258 @@
+// QRStyleRenderer.java - Draws styled 2D codes from one cached vector Path
+package com.qrmaster.app.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.os.SystemClock;
+import android.util.LruCache;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import java.util.Locale;
+
+public class QRStyleRenderer {
+    // Share of the symbol width the logo covers. Level H rebuilds up to ~30% of the
+    // codewords; a 22% square is under 5% of the area, leaving room for wear.
+    public static final float LOGO_FRACTION = 0.22f;
+    private static final int FINDER_SIZE = 7;
+    private static final int PATH_CACHE_SIZE = 32;
+
+    // Paths are in module units, so one cached path draws sharply at any pixel size
+    private static final LruCache<String, Path> pathCache = new LruCache<>(PATH_CACHE_SIZE);
+    private static final Metrics.Counter pathHits = Metrics.counter("cache.style_path.hit");
+    private static final Metrics.Counter pathMisses = Metrics.counter("cache.style_path.miss");
+    private static final Metrics.Histogram drawTime = Metrics.histogram("render.styled_draw");
+
+    private static final String BENCHMARK_CONTENT = "https://example.com/products/0012345678?ref=qrmaster";
+    private static final int[] BENCHMARK_SIZES = {256, 512, 1024};
+
+    // Logos need spare error correction, so encode through here when a style has one.
+    // A null format picks the smallest symbology; a logo always forces QR.
+    public static Symbol encode(String content, String type, BarcodeFormat format, QRStyle style)
+            throws WriterException {
+        return SymbologyRegistry.encode(content, type, format, style.hasLogo());
+    }
+
+    public static Bitmap render(String content, Symbol symbol, QRStyle style, int size) {
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        draw(new Canvas(bitmap), content, symbol, style, 0, 0, size);
+        return bitmap;
+    }
+
+    // Draws the symbol with its quiet zone centred in the square at (left, top)
+    public static void draw(Canvas canvas, String content, Symbol symbol, QRStyle style,
+                            float left, float top, float size) {
+        draw(canvas, modulePath(content, symbol, style), symbol, style, left, top, size);
+    }
+
+    // For batch output such as label sheets, where each code is drawn once and
+    // caching would only evict the paths the UI reuses
+    public static void drawUncached(Canvas canvas, Symbol symbol, QRStyle style,
+                                    float left, float top, float size) {
+        draw(canvas, buildPath(symbol, style), symbol, style, left, top, size);
+    }
+
+    private static void draw(Canvas canvas, Path path, Symbol symbol, QRStyle style,
+                             float left, float top, float size) {
+        long start = System.nanoTime();
+        int width = symbol.width();
+        int height = symbol.height();
+        int modules = Math.max(width, height);
+        float scale = size / (modules + symbol.quietZone * 2);
+        // Rectangular symbols are centred on the long side
+        float originX = left + (size - width * scale) / 2;
+        float originY = top + (size - height * scale) / 2;
+
+        Paint background = new Paint();
+        background.setColor(style.background);
+        canvas.drawRect(left, top, left + size, top + size, background);
+
+        Paint foreground = new Paint(Paint.ANTI_ALIAS_FLAG);
+        if (style.hasGradient()) {
+            foreground.setShader(new LinearGradient(0, 0, width, height,
+                style.foreground, style.gradientEnd, Shader.TileMode.CLAMP));
+        } else {
+            foreground.setColor(style.foreground);
+        }
+
+        canvas.save();
+        canvas.translate(originX, originY);
+        canvas.scale(scale, scale);
+        canvas.drawPath(path, foreground);
+        canvas.restore();
+
+        if (hasLogoHole(symbol, style)) {
+            int hole = logoModules(modules);
+            float inset = (modules - hole) / 2f + 0.5f;
+            float x = originX + inset * scale;
+            float y = originY + inset * scale;
+            float side = (hole - 1) * scale;
+            canvas.drawBitmap(style.logo, null, new RectF(x, y, x + side, y + side),
+                new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG));
+        }
+        drawTime.recordSince(start);
+    }
+
+    static Path modulePath(String content, Symbol symbol, QRStyle style) {
+        String key = cacheKey(content, symbol, style);
+        Path path = pathCache.get(key);
+        if (path != null) {
+            pathHits.inc();
+        } else {
+            pathMisses.inc();
+            path = buildPath(symbol, style);
+            pathCache.put(key, path);
+        }
+        return path;
+    }
+
+    private static String cacheKey(String content, Symbol symbol, QRStyle style) {
+        String level = symbol.qr != null ? symbol.qr.ecLevel.name() : "";
+        return symbol.format + "|" + level + "|" + style.shapeKey() + "|" + content;
+    }
+
+    // Finder shapes and module styles are QR-specific. Data Matrix and Aztec rely on
+    // their solid finder and timing patterns, so they are always drawn as squares.
+    private static Path buildPath(Symbol symbol, QRStyle style) {
+        BitMatrix matrix = symbol.modules;
+        boolean qr = symbol.format == BarcodeFormat.QR_CODE;
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        int hole = hasLogoHole(symbol, style) ? logoModules(width) : 0;
+        int holeStart = (width - hole) / 2;
+        QRStyle.ModuleShape shape = qr ? style.moduleShape : QRStyle.ModuleShape.SQUARE;
+        Path path = new Path();
+
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                if (!isDataModule(matrix, qr, x, y, holeStart, hole)) {
+                    x++;
+                    continue;
+                }
+                // Horizontal runs become one shape each instead of one per module
+                int runStart = x;
+                while (x < width && isDataModule(matrix, qr, x, y, holeStart, hole)) {
+                    x++;
+                }
+                addRun(path, shape, runStart, x, y);
+            }
+        }
+
+        if (qr) {
+            addFinder(path, style.finderShape, 0, 0);
+            addFinder(path, style.finderShape, width - FINDER_SIZE, 0);
+            addFinder(path, style.finderShape, 0, width - FINDER_SIZE);
+        }
+        return path;
+    }
+
+    private static boolean hasLogoHole(Symbol symbol, QRStyle style) {
+        return style.hasLogo() && symbol.format == BarcodeFormat.QR_CODE;
+    }
+
+    private static boolean isDataModule(BitMatrix matrix, boolean qr, int x, int y, int holeStart, int hole) {
+        if (!matrix.get(x, y)) return false;
+        if (qr && isInFinder(x, y, matrix.getWidth())) return false;
+        return hole == 0 || x < holeStart || x >= holeStart + hole || y < holeStart || y >= holeStart + hole;
+    }
+
+    private static boolean isInFinder(int x, int y, int n) {
+        boolean left = x < FINDER_SIZE;
+        boolean top = y < FINDER_SIZE;
+        return (left && top) || (x >= n - FINDER_SIZE && top) || (left && y >= n - FINDER_SIZE);
+    }
+
+    private static void addRun(Path path, QRStyle.ModuleShape shape, int start, int end, int y) {
+        switch (shape) {
+            case ROUNDED:
+                path.addRoundRect(start + 0.05f, y + 0.05f, end - 0.05f, y + 0.95f, 0.45f, 0.45f, Path.Direction.CW);
+                break;
+            case DOTS:
+                for (int x = start; x < end; x++) {
+                    path.addCircle(x + 0.5f, y + 0.5f, 0.42f, Path.Direction.CW);
+                }
+                break;
+            default:
+                path.addRect(start, y, end, y + 1, Path.Direction.CW);
+                break;
+        }
+    }
+
+    // Ring and centre in one path: the counter-clockwise inner contour cuts the hole
+    private static void addFinder(Path path, QRStyle.FinderShape shape, int x, int y) {
+        switch (shape) {
+            case CIRCLE:
+                path.addCircle(x + 3.5f, y + 3.5f, 3.5f, Path.Direction.CW);
+                path.addCircle(x + 3.5f, y + 3.5f, 2.5f, Path.Direction.CCW);
+                path.addCircle(x + 3.5f, y + 3.5f, 1.5f, Path.Direction.CW);
+                break;
+            case ROUNDED:
+                path.addRoundRect(x, y, x + 7, y + 7, 2f, 2f, Path.Direction.CW);
+                path.addRoundRect(x + 1, y + 1, x + 6, y + 6, 1.3f, 1.3f, Path.Direction.CCW);
+                path.addRoundRect(x + 2, y + 2, x + 5, y + 5, 0.9f, 0.9f, Path.Direction.CW);
+                break;
+            default:
+                path.addRect(x, y, x + 7, y + 7, Path.Direction.CW);
+                path.addRect(x + 1, y + 1, x + 6, y + 6, Path.Direction.CCW);
+                path.addRect(x + 2, y + 2, x + 5, y + 5, Path.Direction.CW);
+                break;
+        }
+    }
+
+    // Odd so the hole stays centred on the module grid
+    private static int logoModules(int modules) {
+        return ((int) (modules * LOGO_FRACTION)) | 1;
+    }
+
+    // Per-pixel setPixel rasterization vs the cached path, for the debug stats screen
+    public static String benchmark() {
+        StringBuilder out = new StringBuilder();
+        try {
+            QRStyle style = QRStyle.PLAIN.withShapes(QRStyle.ModuleShape.ROUNDED, QRStyle.FinderShape.ROUNDED);
+            Symbol symbol = encode(BENCHMARK_CONTENT, "URL", BarcodeFormat.QR_CODE, style);
+            for (int size : BENCHMARK_SIZES) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                renderPerPixel(symbol.modules, size, style.foreground, style.background);
+                long pixelNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+                pathCache.remove(cacheKey(BENCHMARK_CONTENT, symbol, style));
+                start = SystemClock.elapsedRealtimeNanos();
+                render(BENCHMARK_CONTENT, symbol, style, size);
+                long coldNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+                start = SystemClock.elapsedRealtimeNanos();
+                render(BENCHMARK_CONTENT, symbol, style, size);
+                long warmNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+                out.append(String.format(Locale.US,
+                    "%d px\n  per-pixel %.2f ms\n  path (build + draw) %.2f ms\n  path (cached) %.2f ms\n",
+                    size, pixelNanos / 1e6, coldNanos / 1e6, warmNanos / 1e6));
+            }
+        } catch (WriterException e) {
+            out.append(e.getMessage()).append('\n');
+        }
+        return out.toString();
+    }
+
+    // The loop every screen used before the path renderer
+    private static Bitmap renderPerPixel(BitMatrix matrix, int size, int fg, int bg) {
+        int modules = matrix.getWidth() + QREncoder.QUIET_ZONE * 2;
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int mx = x * modules / size - QREncoder.QUIET_ZONE;
+                int my = y * modules / size - QREncoder.QUIET_ZONE;
+                boolean dark = mx >= 0 && my >= 0 && mx < matrix.getWidth() && my < matrix.getHeight()
+                    && matrix.get(mx, my);
+                bitmap.setPixel(x, y, dark ? fg : bg);
+            }
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,254 @@
+// ScanFallback.java - ZXing retry chain for frames ML Kit could not read
+package com.qrmaster.app.utils;
+
+import android.os.Process;
+import android.os.SystemClock;
+import androidx.camera.core.ImageProxy;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.qrmaster.app.TaskScheduler;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class ScanFallback {
+    // Each variant works on the same luminance copy, so they run side by side
+    private enum Variant {
+        GLOBAL,     // one histogram threshold, for blurred or small codes that local blocks break up
+        INVERTED,   // light modules on a dark background
+        STRETCHED   // faded print - spread the used grey range over 0..255 first
+    }
+
+    // Past this a variant gives up at its next check; a decode already running finishes
+    private static final long FRAME_BUDGET_MS = 150;
+    // ML Kit keeps the live frames; the fallback only gets a look this often
+    private static final long MIN_INTERVAL_MS = 250;
+    // Centre of the frame, roughly what the on-screen scan frame covers
+    private static final float ROI_FRACTION = 0.7f;
+    // Histogram tails ignored by the stretch, so a few specular pixels don't pin the range
+    private static final float STRETCH_CLIP = 0.01f;
+    private static final int MIN_STRETCH_RANGE = 16;
+
+    private static final Map<DecodeHintType, Object> HINTS = new EnumMap<>(DecodeHintType.class);
+
+    static {
+        HINTS.put(DecodeHintType.POSSIBLE_FORMATS,
+            Arrays.asList(BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX, BarcodeFormat.AZTEC));
+        HINTS.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+    }
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Variant.values().length, owner -> {
+        ForkJoinWorkerThread thread = new ForkJoinWorkerThread(owner) {
+            @Override
+            protected void onStart() {
+                super.onStart();
+                Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+            }
+        };
+        thread.setName("qr-fallback-" + thread.getPoolIndex());
+        return thread;
+    }, null, true);
+
+    // One frame at a time; frames arriving meanwhile are left to ML Kit alone
+    private static final AtomicBoolean busy = new AtomicBoolean();
+    private static volatile long lastStartMs;
+
+    private static final AtomicLong frames = new AtomicLong();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong overBudget = new AtomicLong();
+    private static final AtomicLong totalNanos = new AtomicLong();
+    private static final AtomicLong maxNanos = new AtomicLong();
+    private static final Metrics.Histogram frameTime = Metrics.histogram("scan.fallback_frame");
+    private static final AtomicLong[] variantHits = new AtomicLong[Variant.values().length];
+
+    static {
+        for (int i = 0; i < variantHits.length; i++) {
+            variantHits[i] = new AtomicLong();
+        }
+    }
+
+    public interface Listener {
+        // Called on the main thread, only when a variant decoded something
+        void onDecoded(String text, BarcodeFormat format);
+    }
+
+    private ScanFallback() {}
+
+    // Copies the ROI out of the frame, so the caller may close it as soon as this returns
+    public static void offer(ImageProxy frame, Listener listener) {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastStartMs < MIN_INTERVAL_MS || !busy.compareAndSet(false, true)) return;
+        lastStartMs = now;
+
+        ImageProxy.PlaneProxy luma = frame.getPlanes()[0];
+        int side = (int) (Math.min(frame.getWidth(), frame.getHeight()) * ROI_FRACTION);
+        int left = (frame.getWidth() - side) / 2;
+        int top = (frame.getHeight() - side) / 2;
+        byte[] roi = copyRoi(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(), left, top, side);
+        run(roi, side, listener);
+    }
+
+    private static byte[] copyRoi(ByteBuffer buffer, int rowStride, int pixelStride, int left, int top, int side) {
+        byte[] roi = new byte[side * side];
+        ByteBuffer source = buffer.duplicate();
+        if (pixelStride == 1) {
+            for (int y = 0; y < side; y++) {
+                source.position((top + y) * rowStride + left);
+                source.get(roi, y * side, side);
+            }
+        } else {
+            for (int y = 0; y < side; y++) {
+                int row = (top + y) * rowStride + left * pixelStride;
+                for (int x = 0; x < side; x++) {
+                    roi[y * side + x] = source.get(row + x * pixelStride);
+                }
+            }
+        }
+        return roi;
+    }
+
+    // The first variant to decode wins and the others stop at their next check.
+    // When every variant has finished, the frame is counted and the pool freed.
+    private static void run(byte[] roi, int side, Listener listener) {
+        long started = SystemClock.elapsedRealtimeNanos();
+        long deadline = started + FRAME_BUDGET_MS * 1_000_000L;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger remaining = new AtomicInteger(Variant.values().length);
+
+        for (Variant variant : Variant.values()) {
+            pool.execute(() -> {
+                Result result = null;
+                try {
+                    result = decode(variant, roi, side, done, deadline);
+                } finally {
+                    if (result != null && done.compareAndSet(false, true)) {
+                        hits.incrementAndGet();
+                        variantHits[variant.ordinal()].incrementAndGet();
+                        String text = result.getText();
+                        BarcodeFormat format = result.getBarcodeFormat();
+                        TaskScheduler.get().postToMain(() -> listener.onDecoded(text, format));
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        finish(started);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void finish(long started) {
+        long nanos = SystemClock.elapsedRealtimeNanos() - started;
+        frameTime.record(nanos);
+        frames.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long current;
+        while (nanos > (current = maxNanos.get()) && !maxNanos.compareAndSet(current, nanos)) {
+            // retry
+        }
+        if (nanos > FRAME_BUDGET_MS * 1_000_000L) {
+            overBudget.incrementAndGet();
+        }
+        busy.set(false);
+    }
+
+    // Null when this variant found nothing, was beaten to it, or ran out of time
+    private static Result decode(Variant variant, byte[] roi, int side, AtomicBoolean done, long deadline) {
+        if (stop(done, deadline)) return null;
+        LuminanceSource source;
+        switch (variant) {
+            case INVERTED:
+                source = luminance(roi, side).invert();
+                break;
+            case STRETCHED:
+                byte[] stretched = stretch(roi);
+                if (stretched == null) return null;
+                source = luminance(stretched, side);
+                break;
+            default:
+                source = luminance(roi, side);
+                break;
+        }
+        if (stop(done, deadline)) return null;
+
+        // ZXing's default HybridBinarizer for the transformed images; the plain frame
+        // only gets the global threshold, since a default decode would just repeat it
+        Binarizer binarizer = variant == Variant.GLOBAL
+            ? new GlobalHistogramBinarizer(source) : new HybridBinarizer(source);
+        // Readers keep per-decode state, so each task gets its own
+        MultiFormatReader reader = new MultiFormatReader();
+        reader.setHints(HINTS);
+        try {
+            return reader.decodeWithState(new BinaryBitmap(binarizer));
+        } catch (ReaderException e) {
+            return null;
+        }
+    }
+
+    private static boolean stop(AtomicBoolean done, long deadline) {
+        return done.get() || SystemClock.elapsedRealtimeNanos() > deadline;
+    }
+
+    private static LuminanceSource luminance(byte[] data, int side) {
+        return new PlanarYUVLuminanceSource(data, side, side, 0, 0, side, side, false);
+    }
+
+    // Null when the frame already uses most of the range, so stretching would not change it
+    private static byte[] stretch(byte[] roi) {
+        int[] histogram = new int[256];
+        for (byte b : roi) {
+            histogram[b & 0xFF]++;
+        }
+        int clip = (int) (roi.length * STRETCH_CLIP);
+        int low = 0;
+        for (int count = 0; low < 255 && (count += histogram[low]) <= clip; low++) {
+            // find the low cut
+        }
+        int high = 255;
+        for (int count = 0; high > 0 && (count += histogram[high]) <= clip; high--) {
+            // find the high cut
+        }
+        int range = high - low;
+        if (range < MIN_STRETCH_RANGE || range > 255 - MIN_STRETCH_RANGE) return null;
+
+        byte[] lookup = new byte[256];
+        for (int v = 0; v < 256; v++) {
+            lookup[v] = (byte) Math.max(0, Math.min(255, (v - low) * 255 / range));
+        }
+        byte[] stretched = new byte[roi.length];
+        for (int i = 0; i < roi.length; i++) {
+            stretched[i] = lookup[roi[i] & 0xFF];
+        }
+        return stretched;
+    }
+
+    public static String dumpStats() {
+        long attempted = frames.get();
+        long decoded = hits.get();
+        long divisor = Math.max(1, attempted);
+        StringBuilder out = new StringBuilder(String.format(Locale.US,
+            "frames %d, decoded %d (%.1f%%)\n  time avg %.2f ms / max %.2f ms, over %d ms budget %d\n",
+            attempted, decoded, decoded * 100.0 / divisor,
+            totalNanos.get() / 1e6 / divisor, maxNanos.get() / 1e6, FRAME_BUDGET_MS, overBudget.get()));
+        for (Variant variant : Variant.values()) {
+            out.append(String.format(Locale.US, "  %s wins %d\n",
+                variant.name().toLowerCase(Locale.US), variantHits[variant.ordinal()].get()));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,57 @@
+// ScanWarmup.java - Starts CameraX and the barcode model early to cut time to first scan
+package com.qrmaster.app.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.common.InputImage;
+import com.qrmaster.app.StartupTrace;
+import com.qrmaster.app.TaskScheduler;
+
+public class ScanWarmup {
+    private static final String TAG = "ScanWarmup";
+    private static final int WARMUP_FRAME_SIZE = 64;
+
+    private static BarcodeScanner scanner;
+    private static volatile boolean firstDecodeLogged;
+
+    // One client for the whole process - creating one per frame reloads the detector
+    public static synchronized BarcodeScanner getScanner() {
+        if (scanner == null) {
+            scanner = BarcodeScanning.getClient();
+        }
+        return scanner;
+    }
+
+    // Call from Application.onCreate, before any UI is inflated
+    public static void start(Context context) {
+        // Begins CameraX initialization; ScanFragment later receives the same future
+        long cameraStart = SystemClock.elapsedRealtime();
+        ListenableFuture<ProcessCameraProvider> provider =
+            ProcessCameraProvider.getInstance(context.getApplicationContext());
+        provider.addListener(() -> StartupTrace.record("CameraX init", cameraStart),
+            TaskScheduler.get().executor(TaskScheduler.Lane.CAMERA));
+
+        // ML Kit loads its model on the first process() call, so feed it a blank frame now
+        TaskScheduler.get().execute(TaskScheduler.Lane.CAMERA, () -> {
+            long start = SystemClock.elapsedRealtime();
+            Bitmap blank = Bitmap.createBitmap(WARMUP_FRAME_SIZE, WARMUP_FRAME_SIZE, Bitmap.Config.ARGB_8888);
+            getScanner().process(InputImage.fromBitmap(blank, 0))
+                .addOnCompleteListener(task -> StartupTrace.record("Barcode decoder warm-up", start));
+        });
+    }
+
+    // Logs time from process start to the first decoded barcode, once per launch
+    public static void recordFirstDecode() {
+        if (firstDecodeLogged) return;
+        firstDecodeLogged = true;
+        Log.i(TAG, "Time to first scan: "
+            + (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()) + " ms");
+    }
+}
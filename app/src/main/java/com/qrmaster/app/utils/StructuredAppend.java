@@ -0,0 +1,226 @@
+// StructuredAppend.java - Splits oversized payloads across several QR codes and joins them back
+package com.qrmaster.app.utils;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class StructuredAppend {
+    // Same limit as the QR Structured Append mode
+    public static final int MAX_PARTS = 16;
+    // A single code denser than this scans slowly, so it is worth splitting
+    public static final int SPLIT_ABOVE_VERSION = 20;
+    // Each part stays at or below this, where phone cameras lock on quickly
+    public static final int PART_VERSION = 12;
+    // Most bytes a version 12 code holds (ECC L), so the first guess never has too many parts
+    private static final int PART_BYTES_MAX = 367;
+
+    // "QRSA:2/5:3c:" - index, total and the parity byte of the whole payload. A text
+    // prefix rather than the QR Structured Append mode, which ZXing can't write, so
+    // only this app joins the parts; other scanners show each one with its header.
+    private static final Pattern HEADER = Pattern.compile("^QRSA:(\\d{1,2})/(\\d{1,2}):([0-9a-f]{2}):");
+
+    public interface PartEncoder {
+        Symbol encode(String part) throws WriterException;
+    }
+
+    // Payloads (headers included) and their symbols, in scanning order
+    public static class Split {
+        public final List<String> payloads;
+        public final List<Symbol> symbols;
+
+        public Split(List<String> payloads, List<Symbol> symbols) {
+            this.payloads = payloads;
+            this.symbols = symbols;
+        }
+    }
+
+    public static class Part {
+        public final int index;
+        public final int total;
+        public final int parity;
+        public final String data;
+
+        Part(int index, int total, int parity, String data) {
+            this.index = index;
+            this.total = total;
+            this.parity = parity;
+            this.data = data;
+        }
+    }
+
+    private StructuredAppend() {}
+
+    public static boolean shouldSplit(QREncoder.Result result) {
+        return result.version > SPLIT_ABOVE_VERSION;
+    }
+
+    // Starts from an estimated part count and adds parts until every one fits PART_VERSION
+    public static Split split(String content, PartEncoder encoder) throws WriterException {
+        int parity = parityOf(content);
+        int first = Math.min(MAX_PARTS, Math.max(2, (utf8Length(content) + PART_BYTES_MAX - 1) / PART_BYTES_MAX));
+        for (int wanted = first; wanted <= MAX_PARTS; wanted++) {
+            Split split = encodeAll(chunk(content, wanted), parity, encoder);
+            if (split != null) return split;
+        }
+        throw new WriterException("Too much data for " + MAX_PARTS + " codes");
+    }
+
+    // The codes a stored row renders as. A split set is stored as its full payload in
+    // QR_CODE, like a scanned set once reassembled, and comes back through the same
+    // rule that split it when it was generated: one code unless that would be past
+    // SPLIT_ABOVE_VERSION or too long for any QR code.
+    public static List<Symbol> encodeStored(String content, String type, String storedFormat)
+            throws WriterException {
+        BarcodeFormat format = SymbologyRegistry.parse(storedFormat);
+        if (format != BarcodeFormat.QR_CODE) {
+            return Collections.singletonList(SymbologyRegistry.encode(content, type, format, false));
+        }
+        Symbol single = null;
+        try {
+            single = SymbologyRegistry.encode(content, type, BarcodeFormat.QR_CODE, false);
+        } catch (WriterException e) {
+            // too long for one code; split below
+        }
+        if (single != null && !shouldSplit(single.qr)) {
+            return Collections.singletonList(single);
+        }
+        return split(content, part -> SymbologyRegistry.encode(part, type, BarcodeFormat.QR_CODE, false)).symbols;
+    }
+
+    // Null when some part is still too dense
+    private static Split encodeAll(List<String> chunks, int parity, PartEncoder encoder) {
+        List<String> payloads = new ArrayList<>(chunks.size());
+        List<Symbol> symbols = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            String payload = header(i + 1, chunks.size(), parity) + chunks.get(i);
+            try {
+                Symbol symbol = encoder.encode(payload);
+                if (symbol.qr != null && symbol.qr.version > PART_VERSION) return null;
+                payloads.add(payload);
+                symbols.add(symbol);
+            } catch (WriterException e) {
+                return null;
+            }
+        }
+        return new Split(payloads, symbols);
+    }
+
+    private static String header(int index, int total, int parity) {
+        return String.format(Locale.US, "QRSA:%d/%d:%02x:", index, total, parity);
+    }
+
+    // Splits on code point boundaries into chunks of about equal UTF-8 size
+    private static List<String> chunk(String content, int parts) {
+        int target = (utf8Length(content) + parts - 1) / parts;
+        List<String> chunks = new ArrayList<>(parts);
+        int start = 0;
+        int bytes = 0;
+        int i = 0;
+        while (i < content.length()) {
+            int codePoint = content.codePointAt(i);
+            i += Character.charCount(codePoint);
+            bytes += utf8Length(codePoint);
+            if (bytes >= target && chunks.size() < parts - 1) {
+                chunks.add(content.substring(start, i));
+                start = i;
+                bytes = 0;
+            }
+        }
+        if (start < content.length() || chunks.isEmpty()) {
+            chunks.add(content.substring(start));
+        }
+        return chunks;
+    }
+
+    // Null for anything that is not one of our parts
+    public static Part parse(String raw) {
+        Matcher matcher = HEADER.matcher(raw);
+        if (!matcher.find()) return null;
+        int index = Integer.parseInt(matcher.group(1));
+        int total = Integer.parseInt(matcher.group(2));
+        if (total < 1 || total > MAX_PARTS || index < 1 || index > total) return null;
+        return new Part(index, total, Integer.parseInt(matcher.group(3), 16), raw.substring(matcher.end()));
+    }
+
+    // XOR of every payload byte, as in the standard's parity field; tells sets apart
+    static int parityOf(String content) {
+        int parity = 0;
+        for (byte b : content.getBytes(StandardCharsets.UTF_8)) {
+            parity ^= b & 0xFF;
+        }
+        return parity;
+    }
+
+    private static int utf8Length(String content) {
+        int length = 0;
+        int i = 0;
+        while (i < content.length()) {
+            int codePoint = content.codePointAt(i);
+            length += utf8Length(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return length;
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) return 1;
+        if (codePoint < 0x800) return 2;
+        if (codePoint < 0x10000) return 3;
+        return 4;
+    }
+
+    // Collects parts of one set in any order. Not thread-safe; feed it from one thread.
+    public static class Assembler {
+        private String[] parts;
+        private int parity;
+        private int received;
+
+        // True when the part was new. A part from a different set starts over.
+        public boolean offer(Part part) {
+            if (parts == null || parts.length != part.total || parity != part.parity) {
+                parts = new String[part.total];
+                parity = part.parity;
+                received = 0;
+            }
+            if (parts[part.index - 1] != null) return false;
+            parts[part.index - 1] = part.data;
+            received++;
+            return true;
+        }
+
+        public int received() {
+            return received;
+        }
+
+        public int total() {
+            return parts != null ? parts.length : 0;
+        }
+
+        public boolean isComplete() {
+            return parts != null && received == parts.length;
+        }
+
+        // Null when the joined payload fails the parity check
+        public String assemble() {
+            if (!isComplete()) return null;
+            StringBuilder content = new StringBuilder();
+            for (String part : parts) {
+                content.append(part);
+            }
+            String joined = content.toString();
+            return parityOf(joined) == parity ? joined : null;
+        }
+
+        public void reset() {
+            parts = null;
+            received = 0;
+        }
+    }
+}
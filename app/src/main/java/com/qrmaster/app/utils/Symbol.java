@@ -0,0 +1,103 @@
+// Symbol.java - An encoded 2D barcode as a module grid, independent of its symbology
+package com.qrmaster.app.utils;
+
+import android.graphics.Bitmap;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+import java.util.Locale;
+
+public class Symbol {
+    private static final Metrics.Histogram rasterTime = Metrics.histogram("render.bitmap");
+    private static final Metrics.Histogram svgTime = Metrics.histogram("render.svg");
+
+    public final BarcodeFormat format;
+    // One bit per module, without a quiet zone
+    public final BitMatrix modules;
+    // Light margin the symbology needs around it, in modules
+    public final int quietZone;
+    // Version and capacity details; null for formats other than QR
+    public final QREncoder.Result qr;
+
+    public Symbol(BarcodeFormat format, BitMatrix modules, int quietZone, QREncoder.Result qr) {
+        this.format = format;
+        this.modules = modules;
+        this.quietZone = quietZone;
+        this.qr = qr;
+    }
+
+    public int width() {
+        return modules.getWidth();
+    }
+
+    public int height() {
+        return modules.getHeight();
+    }
+
+    // Space the symbol takes on paper or screen, quiet zone included
+    public int footprint() {
+        return (width() + quietZone * 2) * (height() + quietZone * 2);
+    }
+
+    public String describe() {
+        if (qr != null) {
+            return String.format(Locale.US, "QR version %d (%d×%d), ECC %s",
+                qr.version, qr.modules, qr.modules, qr.ecLevel);
+        }
+        return String.format(Locale.US, "%s (%d×%d)",
+            SymbologyRegistry.displayName(format), width(), height());
+    }
+
+    // Fills whole rows with setPixels instead of one setPixel call per pixel
+    public Bitmap toBitmap(int size, int fg, int bg) {
+        long start = System.nanoTime();
+        int span = Math.max(width(), height()) + quietZone * 2;
+        int scale = Math.max(1, size / span);
+        int left = (size - width() * scale) / 2;
+        int top = (size - height() * scale) / 2;
+
+        int[] row = new int[size];
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.RGB_565);
+        for (int y = 0; y < size; y++) {
+            int my = (y - top) / scale;
+            boolean inRows = y >= top && my < height();
+            for (int x = 0; x < size; x++) {
+                int mx = (x - left) / scale;
+                row[x] = inRows && x >= left && mx < width() && modules.get(mx, my) ? fg : bg;
+            }
+            bitmap.setPixels(row, 0, size, 0, y, size, 1);
+        }
+        rasterTime.recordSince(start);
+        return bitmap;
+    }
+
+    // Vector version: one path of horizontal runs, scaled to size by the viewBox.
+    // Colours are written as given, so callers pass validated #RRGGBB values.
+    public String toSvg(int size, String fg, String bg) {
+        long begin = System.nanoTime();
+        int span = Math.max(width(), height()) + quietZone * 2;
+        int left = (span - width()) / 2;
+        int top = (span - height()) / 2;
+
+        StringBuilder path = new StringBuilder();
+        for (int y = 0; y < height(); y++) {
+            int x = 0;
+            while (x < width()) {
+                if (!modules.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < width() && modules.get(x, y)) {
+                    x++;
+                }
+                path.append('M').append(left + start).append(' ').append(top + y)
+                    .append('h').append(x - start).append("v1h-").append(x - start).append('z');
+            }
+        }
+        svgTime.recordSince(begin);
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + size + "\" height=\"" + size
+            + "\" viewBox=\"0 0 " + span + " " + span + "\" shape-rendering=\"crispEdges\">"
+            + "<rect width=\"100%\" height=\"100%\" fill=\"" + bg + "\"/>"
+            + "<path fill=\"" + fg + "\" d=\"" + path + "\"/></svg>\n";
+    }
+}
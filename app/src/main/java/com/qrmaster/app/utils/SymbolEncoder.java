@@ -0,0 +1,16 @@
+// SymbolEncoder.java - One barcode symbology that SymbologyRegistry can choose
+package com.qrmaster.app.utils;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+
+public interface SymbolEncoder {
+    BarcodeFormat format();
+
+    String displayName();
+
+    // Only QR has the error-correction headroom to survive a centre logo
+    boolean supportsLogo();
+
+    Symbol encode(String content, String type, boolean reserveLogoRoom) throws WriterException;
+}
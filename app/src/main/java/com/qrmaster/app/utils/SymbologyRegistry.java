@@ -0,0 +1,183 @@
+// SymbologyRegistry.java - Available 2D symbologies and automatic selection between them
+package com.qrmaster.app.utils;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.datamatrix.encoder.SymbolShapeHint;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class SymbologyRegistry {
+    // Registration order breaks ties in automatic selection, so QR goes first
+    private static final Map<BarcodeFormat, SymbolEncoder> encoders = new LinkedHashMap<>();
+    // Every render path encodes through here, automatic selection included
+    private static final Metrics.Histogram encodeTime = Metrics.histogram("render.encode");
+
+    static {
+        register(new QrEncoder());
+        register(new MatrixEncoder(BarcodeFormat.DATA_MATRIX, "Data Matrix", 1));
+        // ZXing switches Aztec to its compact form on its own for short payloads
+        register(new MatrixEncoder(BarcodeFormat.AZTEC, "Aztec", 1));
+    }
+
+    private SymbologyRegistry() {}
+
+    public static synchronized void register(SymbolEncoder encoder) {
+        encoders.put(encoder.format(), encoder);
+    }
+
+    public static synchronized List<SymbolEncoder> all() {
+        return new ArrayList<>(encoders.values());
+    }
+
+    public static synchronized String displayName(BarcodeFormat format) {
+        SymbolEncoder encoder = encoders.get(format);
+        return encoder != null ? encoder.displayName() : format.name();
+    }
+
+    // Stored format names from QRItem; anything unknown renders as QR
+    public static BarcodeFormat parse(String name) {
+        if (name != null) {
+            try {
+                BarcodeFormat format = BarcodeFormat.valueOf(name);
+                synchronized (SymbologyRegistry.class) {
+                    if (encoders.containsKey(format)) return format;
+                }
+            } catch (IllegalArgumentException e) {
+                // fall through
+            }
+        }
+        return BarcodeFormat.QR_CODE;
+    }
+
+    // Re-renders a stored item in the format it was saved with
+    public static Symbol encode(String content, String type, String storedFormat) throws WriterException {
+        return encode(content, type, parse(storedFormat), false);
+    }
+
+    // format null picks whichever registered symbology has the smallest footprint
+    public static Symbol encode(String content, String type, BarcodeFormat format, boolean logo)
+            throws WriterException {
+        long start = System.nanoTime();
+        try {
+            return select(content, type, format, logo);
+        } finally {
+            encodeTime.recordSince(start);
+        }
+    }
+
+    // With a logo, only symbologies whose encoders support one are considered; a chosen
+    // format that can't carry it falls back to automatic selection among those
+    private static Symbol select(String content, String type, BarcodeFormat format, boolean logo)
+            throws WriterException {
+        if (format != null) {
+            SymbolEncoder encoder = encoderFor(format);
+            if (!logo || encoder.supportsLogo()) {
+                return encoder.encode(content, type, logo);
+            }
+        }
+
+        Symbol best = null;
+        WriterException failure = null;
+        for (SymbolEncoder encoder : all()) {
+            if (logo && !encoder.supportsLogo()) continue;
+            try {
+                Symbol symbol = encoder.encode(content, type, logo);
+                if (best == null || symbol.footprint() < best.footprint()) {
+                    best = symbol;
+                }
+            } catch (WriterException e) {
+                // Each symbology has its own limits; another one may still fit
+                failure = e;
+            }
+        }
+        if (best == null) {
+            throw failure != null ? failure
+                : new WriterException(logo ? "No symbology supports a logo" : "No symbology registered");
+        }
+        return best;
+    }
+
+    private static synchronized SymbolEncoder encoderFor(BarcodeFormat format) throws WriterException {
+        SymbolEncoder encoder = encoders.get(format);
+        if (encoder == null) throw new WriterException("Unsupported format " + format);
+        return encoder;
+    }
+
+    private static class QrEncoder implements SymbolEncoder {
+        @Override
+        public BarcodeFormat format() { return BarcodeFormat.QR_CODE; }
+
+        @Override
+        public String displayName() { return "QR Code"; }
+
+        @Override
+        public boolean supportsLogo() { return true; }
+
+        @Override
+        public Symbol encode(String content, String type, boolean reserveLogoRoom) throws WriterException {
+            QREncoder.Result result = QREncoder.encodeFor(content, type,
+                reserveLogoRoom ? ErrorCorrectionLevel.H : ErrorCorrectionLevel.L);
+            ByteMatrix matrix = result.code.getMatrix();
+            BitMatrix modules = new BitMatrix(matrix.getWidth(), matrix.getHeight());
+            for (int y = 0; y < matrix.getHeight(); y++) {
+                for (int x = 0; x < matrix.getWidth(); x++) {
+                    if (matrix.get(x, y) == 1) modules.set(x, y);
+                }
+            }
+            return new Symbol(BarcodeFormat.QR_CODE, modules, QREncoder.QUIET_ZONE, result);
+        }
+    }
+
+    // Data Matrix and Aztec through MultiFormatWriter. A 0×0 size request
+    // returns the bare symbol at one pixel per module.
+    private static class MatrixEncoder implements SymbolEncoder {
+        private final BarcodeFormat format;
+        private final String displayName;
+        private final int quietZone;
+
+        MatrixEncoder(BarcodeFormat format, String displayName, int quietZone) {
+            this.format = format;
+            this.displayName = displayName;
+            this.quietZone = quietZone;
+        }
+
+        @Override
+        public BarcodeFormat format() { return format; }
+
+        @Override
+        public String displayName() { return displayName; }
+
+        @Override
+        public boolean supportsLogo() { return false; }
+
+        @Override
+        public Symbol encode(String content, String type, boolean reserveLogoRoom) throws WriterException {
+            Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+            Charset charset = QREncoder.charsetFor(content);
+            if (charset != null) {
+                hints.put(EncodeHintType.CHARACTER_SET, charset.name());
+            }
+            if (format == BarcodeFormat.DATA_MATRIX) {
+                hints.put(EncodeHintType.DATA_MATRIX_SHAPE, SymbolShapeHint.FORCE_SQUARE);
+                hints.put(EncodeHintType.DATA_MATRIX_COMPACT, Boolean.TRUE);
+            }
+            try {
+                BitMatrix modules = new MultiFormatWriter().encode(content, format, 0, 0, hints);
+                return new Symbol(format, modules, quietZone, null);
+            } catch (IllegalArgumentException e) {
+                // Aztec and Data Matrix report oversized data this way rather than as WriterException
+                throw new WriterException(e);
+            }
+        }
+    }
+}
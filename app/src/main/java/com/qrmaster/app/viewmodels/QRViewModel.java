@@ -5,20 +5,26 @@ import android.app.Application;
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import com.qrmaster.app.QRMasterApplication;
+import com.qrmaster.app.StartupTrace;
 import com.qrmaster.app.data.QRRepository;
+import com.qrmaster.app.data.SeenIndex;
 import com.qrmaster.app.models.QRItem;
+import com.qrmaster.app.models.QRListItem;
 import java.util.List;
 
 public class QRViewModel extends AndroidViewModel {
     private QRRepository repository;
-    private LiveData<List<QRItem>> allItems;
-    private LiveData<List<QRItem>> savedItems;
+    private LiveData<List<QRListItem>> allItems;
+    private LiveData<List<QRListItem>> savedItems;
 
     public QRViewModel(@NonNull Application application) {
         super(application);
-        repository = new QRRepository(application);
+        long start = StartupTrace.begin("QRViewModel init");
+        repository = ((QRMasterApplication) application).getRepository();
         allItems = repository.getAllItems();
         savedItems = repository.getSavedItems();
+        StartupTrace.end("QRViewModel init", start);
     }
 
     public void insert(QRItem item) {
@@ -33,19 +39,83 @@ public class QRViewModel extends AndroidViewModel {
         repository.delete(item);
     }
 
+    public void setSaved(int id, boolean saved) {
+        repository.setSaved(id, saved);
+    }
+
+    public void toggleSaved(int id, boolean saved) {
+        repository.toggleSaved(id, saved);
+    }
+
+    public Boolean getPendingSaved(int id) {
+        return repository.getPendingSaved(id);
+    }
+
+    public void getItemById(int id, QRRepository.ItemCallback callback) {
+        repository.getItemById(id, callback);
+    }
+
+    public void getItemsByIds(List<Integer> ids, QRRepository.ItemsCallback callback) {
+        repository.getItemsByIds(ids, callback);
+    }
+
+    public void getSavedIds(QRRepository.IdsCallback callback) {
+        repository.getSavedIds(callback);
+    }
+
+    public void getRecentItems(QRRepository.ListCallback callback) {
+        repository.getRecentItems(callback);
+    }
+
+    public Boolean mightHaveSeen(String content) {
+        return repository.mightHaveSeen(content);
+    }
+
+    public void checkSeen(String content, SeenIndex.Callback callback) {
+        repository.checkSeen(content, callback);
+    }
+
     public void deleteMultiple(List<Integer> ids) {
         repository.deleteMultiple(ids);
     }
 
-    public LiveData<List<QRItem>> getAllItems() {
+    public void deleteMultiple(List<Integer> ids, QRRepository.DeleteCallback callback) {
+        repository.deleteMultiple(ids, callback);
+    }
+
+    public long softDeleteMultiple(List<Integer> ids, QRRepository.DeleteCallback callback) {
+        return repository.softDeleteMultiple(ids, callback);
+    }
+
+    public long softDeleteAllSaved(QRRepository.DeleteCallback callback) {
+        return repository.softDeleteAllSaved(callback);
+    }
+
+    public void restoreDeleted(long token) {
+        repository.restoreDeleted(token);
+    }
+
+    public void deleteAllSaved(QRRepository.DeleteCallback callback) {
+        repository.deleteAllSaved(callback);
+    }
+
+    public void deleteByType(String type, QRRepository.DeleteCallback callback) {
+        repository.deleteByType(type, callback);
+    }
+
+    public void deleteOlderThan(long cutoff, QRRepository.DeleteCallback callback) {
+        repository.deleteOlderThan(cutoff, callback);
+    }
+
+    public LiveData<List<QRListItem>> getAllItems() {
         return allItems;
     }
 
-    public LiveData<List<QRItem>> getSavedItems() {
+    public LiveData<List<QRListItem>> getSavedItems() {
         return savedItems;
     }
 
-    public LiveData<List<QRItem>> getItemsByType(String type) {
+    public LiveData<List<QRListItem>> getItemsByType(String type) {
         return repository.getItemsByType(type);
     }
 }
\ No newline at end of file
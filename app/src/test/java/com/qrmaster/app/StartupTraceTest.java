@@ -0,0 +1,51 @@
+// StartupTraceTest.java - Launch spans end up in the startup report
+package com.qrmaster.app;
+
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+// Runs QRMasterApplication's traced startup without the CameraX and ML Kit warmup
+@RunWith(RobolectricTestRunner.class)
+@Config(application = TracedStartupApplication.class)
+public class StartupTraceTest {
+    private static final long WRITE_TIMEOUT_MS = 5000;
+
+    @Test
+    public void reportIsWrittenWithLaunchSections() throws Exception {
+        TracedStartupApplication app = ApplicationProvider.getApplicationContext();
+        app.getRepository();
+
+        StartupTrace.reportFirstFrame(app);
+        // The report waits on the main looper for background spans, then is written on the maintenance lane
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(StartupTrace.REPORT_DELAY_MS));
+        File report = new File(app.getFilesDir(), StartupTrace.REPORT_FILE);
+        String text = "";
+        long deadline = System.currentTimeMillis() + WRITE_TIMEOUT_MS;
+        while (!text.contains("QRRepository init") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            if (report.exists()) {
+                text = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+            }
+        }
+
+        assertTrue(text, text.startsWith("first frame at "));
+        assertTrue(text, text.contains("Application.onCreate"));
+        assertTrue(text, text.contains("QRRepository init"));
+        for (String line : text.split("\n")) {
+            if (!line.startsWith("first frame")) {
+                assertTrue(line, line.matches(".+ start +-?\\d+ ms  took +\\d+ ms  \\[.+]"));
+            }
+        }
+    }
+}
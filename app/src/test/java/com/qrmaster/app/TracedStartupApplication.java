@@ -0,0 +1,9 @@
+// TracedStartupApplication.java - QRMasterApplication without the camera warmup, for JVM tests
+package com.qrmaster.app;
+
+// onCreate and getRepository keep their spans; CameraX and ML Kit never start
+public class TracedStartupApplication extends QRMasterApplication {
+    @Override
+    protected void startWarmup() {
+    }
+}
@@ -0,0 +1,153 @@
+// LanServerLoopbackTest.java - Drives the LAN server over loopback against an in-memory database
+package com.qrmaster.app.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import android.content.Context;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import com.qrmaster.app.data.HistoryApi;
+import com.qrmaster.app.data.QRDatabase;
+import com.qrmaster.app.models.QRItem;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+// A plain Application, so the test doesn't start camera warm-up and the rest of launch
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class LanServerLoopbackTest {
+    private static final String TOKEN = "0123456789abcdef";
+    private static final int ROWS = 60;
+    private static final int PAGE_SIZE = 25;
+
+    private QRDatabase database;
+    private HttpServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        // Seeded from the test thread, which Robolectric runs as the main thread
+        database = Room.inMemoryDatabaseBuilder(context, QRDatabase.class)
+            .allowMainThreadQueries()
+            .build();
+        List<QRItem> items = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            items.add(new QRItem("item " + i, "TEXT", 1_000L + i));
+        }
+        database.qrDao().insertAll(items);
+
+        server = new HttpServer(LanServer.router(new HistoryApi(database), new QrApi(), TOKEN));
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        port = server.getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        database.close();
+    }
+
+    @Test
+    public void rejectsRequestsWithoutTheToken() throws Exception {
+        assertEquals(401, LoopbackClient.get(port, "/items").status);
+        assertEquals(401, LoopbackClient.get(port, "/items?token=wrong").status);
+        assertEquals(200, LoopbackClient.get(port, "/",
+            Collections.singletonMap("Authorization", "Bearer " + TOKEN)).status);
+    }
+
+    @Test
+    public void statusCountsLiveRows() throws Exception {
+        LoopbackClient.Response status = LoopbackClient.get(port, "/?token=" + TOKEN);
+        assertEquals(200, status.status);
+        assertEquals(ROWS, new JSONObject(status.text()).getInt("items"));
+    }
+
+    @Test
+    public void pagesWalkEveryRowInIdOrder() throws Exception {
+        int seen = 0;
+        int after = 0;
+        boolean reachedEnd = false;
+        while (!reachedEnd) {
+            LoopbackClient.Response page = LoopbackClient.get(port,
+                "/items?limit=" + PAGE_SIZE + "&after=" + after + "&token=" + TOKEN);
+            assertEquals(200, page.status);
+            assertTrue("pages are streamed", page.isChunked());
+            JSONObject json = new JSONObject(page.text());
+            JSONArray items = json.getJSONArray("items");
+            for (int i = 0; i < items.length(); i++) {
+                int id = items.getJSONObject(i).getInt("id");
+                assertTrue("id " + id + " after " + after, id > after);
+                after = id;
+            }
+            seen += items.length();
+            reachedEnd = json.isNull("next");
+        }
+        assertEquals(ROWS, seen);
+    }
+
+    @Test
+    public void searchMatchesContentAndNeedsAQuery() throws Exception {
+        // "item 1" and "item 10" to "item 19"
+        LoopbackClient.Response search = LoopbackClient.get(port, "/search?q=item%201&token=" + TOKEN);
+        assertEquals(200, search.status);
+        assertEquals(11, new JSONObject(search.text()).getJSONArray("items").length());
+
+        // LIKE wildcards are matched literally
+        LoopbackClient.Response wildcards = LoopbackClient.get(port, "/search?q=%25_&token=" + TOKEN);
+        assertEquals(0, new JSONObject(wildcards.text()).getJSONArray("items").length());
+
+        assertEquals(400, LoopbackClient.get(port, "/search?token=" + TOKEN).status);
+        assertEquals(404, LoopbackClient.get(port, "/nowhere?token=" + TOKEN).status);
+    }
+
+    @Test
+    public void emptyRequestHeadGets400AndServerKeepsRunning() throws Exception {
+        try (Socket socket = LoopbackClient.open(port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write("\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            assertEquals(400, LoopbackClient.read(socket).status);
+        }
+        assertTrue(server.isRunning());
+        assertEquals(200, LoopbackClient.get(port, "/?token=" + TOKEN).status);
+    }
+
+    @Test
+    public void connectionsOverTheLimitGet503() throws Exception {
+        List<Socket> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < HttpServer.MAX_CONNECTIONS; i++) {
+                held.add(LoopbackClient.open(port));
+            }
+            // Robolectric's SystemClock doesn't advance on its own, so wait on wall time
+            long deadline = System.currentTimeMillis() + 2000;
+            while (server.openConnections() < HttpServer.MAX_CONNECTIONS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            try (Socket extra = LoopbackClient.open(port)) {
+                assertEquals(503, LoopbackClient.read(extra).status);
+            }
+        } finally {
+            for (Socket socket : held) {
+                socket.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+// LoadGenerator.java - Closed-loop load generator for the LAN server, run against localhost in tests
+package com.qrmaster.app.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Each worker sends its next request as soon as the previous one is answered,
+// so the offered load adjusts to what the server sustains.
+public final class LoadGenerator {
+
+    public interface Requests {
+        // Request target (path and query) for a worker's i-th request
+        String target(int worker, int i);
+    }
+
+    public static class Result {
+        final String name;
+        final long elapsedNanos;
+        final long[] latencyNanos;
+        final Map<Integer, Integer> statuses;
+        final int errors;
+
+        Result(String name, long elapsedNanos, long[] latencyNanos, Map<Integer, Integer> statuses, int errors) {
+            this.name = name;
+            this.elapsedNanos = elapsedNanos;
+            this.latencyNanos = latencyNanos;
+            this.statuses = statuses;
+            this.errors = errors;
+        }
+
+        public int count(int status) {
+            Integer count = statuses.get(status);
+            return count != null ? count : 0;
+        }
+
+        private double percentileMs(double p) {
+            if (latencyNanos.length == 0) return 0;
+            int index = (int) Math.ceil(p * latencyNanos.length) - 1;
+            return latencyNanos[Math.max(0, Math.min(latencyNanos.length - 1, index))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder codes = new StringBuilder();
+            for (Map.Entry<Integer, Integer> status : statuses.entrySet()) {
+                codes.append(' ').append(status.getKey()).append('×').append(status.getValue());
+            }
+            int requests = latencyNanos.length + errors;
+            return String.format(Locale.US,
+                "%s\n  %d requests in %.2f s = %.0f req/s\n"
+                    + "  p50 %.2f / p90 %.2f / p99 %.2f / max %.2f ms\n  status%s, errors %d\n",
+                name, requests, elapsedNanos / 1e9, requests / (elapsedNanos / 1e9),
+                percentileMs(0.50), percentileMs(0.90), percentileMs(0.99), percentileMs(1.0),
+                codes, errors);
+        }
+    }
+
+    private LoadGenerator() {}
+
+    // Blocking for durationMs - call from a background thread
+    public static Result run(String name, int port, int concurrency, long durationMs,
+                             Map<String, String> headers, Requests requests) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + durationMs * 1_000_000L;
+        Worker[] workers = new Worker[concurrency];
+        for (int w = 0; w < concurrency; w++) {
+            workers[w] = new Worker(w, port, deadline, headers, requests);
+            workers[w].start();
+        }
+
+        List<long[]> latencies = new ArrayList<>();
+        Map<Integer, Integer> statuses = new TreeMap<>();
+        int errors = 0;
+        int total = 0;
+        for (Worker worker : workers) {
+            worker.join();
+            latencies.add(Arrays.copyOf(worker.latencies, worker.count));
+            total += worker.count;
+            errors += worker.errors;
+            for (Map.Entry<Integer, Integer> status : worker.statuses.entrySet()) {
+                Integer current = statuses.get(status.getKey());
+                statuses.put(status.getKey(), (current != null ? current : 0) + status.getValue());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] merged = new long[total];
+        int offset = 0;
+        for (long[] part : latencies) {
+            System.arraycopy(part, 0, merged, offset, part.length);
+            offset += part.length;
+        }
+        Arrays.sort(merged);
+        return new Result(name, elapsed, merged, statuses, errors);
+    }
+
+    private static class Worker extends Thread {
+        private final int index;
+        private final int port;
+        private final long deadline;
+        private final Map<String, String> headers;
+        private final Requests requests;
+        // Answered requests only; failed connections count as errors
+        long[] latencies = new long[1024];
+        int count;
+        int errors;
+        final Map<Integer, Integer> statuses = new TreeMap<>();
+
+        Worker(int index, int port, long deadline, Map<String, String> headers, Requests requests) {
+            super("qr-load-" + index);
+            this.index = index;
+            this.port = port;
+            this.deadline = deadline;
+            this.headers = headers;
+            this.requests = requests;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; System.nanoTime() < deadline; i++) {
+                long sent = System.nanoTime();
+                try {
+                    LoopbackClient.Response response = LoopbackClient.get(port, requests.target(index, i), headers);
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - sent;
+                    Integer current = statuses.get(response.status);
+                    statuses.put(response.status, (current != null ? current : 0) + 1);
+                } catch (IOException e) {
+                    errors++;
+                }
+            }
+        }
+    }
+}
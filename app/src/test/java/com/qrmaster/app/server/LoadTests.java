@@ -0,0 +1,6 @@
+// LoadTests.java - JUnit category for timed load phases, left out of the default test run
+package com.qrmaster.app.server;
+
+// Run with ./gradlew testDebugUnitTest -PloadTests
+public interface LoadTests {
+}
@@ -0,0 +1,168 @@
+// LoopbackClient.java - Minimal blocking HTTP client for driving the LAN server in tests
+package com.qrmaster.app.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+public final class LoopbackClient {
+    private static final int TIMEOUT_MS = 5000;
+
+    public static class Response {
+        public final int status;
+        private final Map<String, String> headers;
+        public final byte[] body;
+
+        Response(int status, Map<String, String> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public String header(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+
+        public boolean isChunked() {
+            return "chunked".equalsIgnoreCase(header("transfer-encoding"));
+        }
+
+        public String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private LoopbackClient() {}
+
+    public static Response get(int port, String target) throws IOException {
+        return get(port, target, Collections.emptyMap());
+    }
+
+    public static Response get(int port, String target, Map<String, String> headers) throws IOException {
+        try (Socket socket = open(port)) {
+            StringBuilder request = new StringBuilder("GET ").append(target).append(" HTTP/1.1\r\n")
+                .append("Host: 127.0.0.1:").append(port).append("\r\n");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+            request.append("Connection: close\r\n\r\n");
+            OutputStream out = socket.getOutputStream();
+            out.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            return read(socket);
+        }
+    }
+
+    public static Socket open(int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), TIMEOUT_MS);
+            socket.setSoTimeout(TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    // Reads one response; the body is de-chunked when the server sent it chunked
+    public static Response read(Socket socket) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        String statusLine = readLine(in);
+        if (statusLine == null) throw new EOFException("No response");
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2) throw new IOException("Bad status line: " + statusLine);
+        int status;
+        try {
+            status = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad status line: " + statusLine);
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            readChunked(in, body);
+        } else if (headers.containsKey("content-length")) {
+            copy(in, body, Long.parseLong(headers.get("content-length")));
+        } else {
+            copy(in, body, Long.MAX_VALUE);
+        }
+        return new Response(status, headers, body.toByteArray());
+    }
+
+    private static void readChunked(InputStream in, ByteArrayOutputStream body) throws IOException {
+        while (true) {
+            String sizeLine = readLine(in);
+            if (sizeLine == null) throw new EOFException("Chunked body ended early");
+            int semicolon = sizeLine.indexOf(';');
+            long size;
+            try {
+                size = Long.parseLong((semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad chunk size: " + sizeLine);
+            }
+            if (size == 0) {
+                // Trailers, then the blank line
+                while ((sizeLine = readLine(in)) != null && !sizeLine.isEmpty()) {
+                    // ignored
+                }
+                return;
+            }
+            copy(in, body, size);
+            if (!"".equals(readLine(in))) throw new IOException("Missing CRLF after chunk");
+        }
+    }
+
+    // Stops early only when length is Long.MAX_VALUE (read to end of stream)
+    private static void copy(InputStream in, ByteArrayOutputStream out, long length) throws IOException {
+        byte[] buffer = new byte[8192];
+        long remaining = length;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                if (length == Long.MAX_VALUE) return;
+                throw new EOFException("Body ended early");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+
+    // Null at end of stream; the CRLF is not included
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+}
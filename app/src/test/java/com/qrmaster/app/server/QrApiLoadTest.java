@@ -0,0 +1,118 @@
+// QrApiLoadTest.java - Load and caching behaviour of GET /qr over loopback
+package com.qrmaster.app.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+// Each test gets its own QrApi, so load never touches the cache or render pool
+// of the server the app runs. The timed phases are LoadTests, run only with -PloadTests.
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class QrApiLoadTest {
+    // More clients than the render pool takes, so the unique phase sheds load
+    private static final int CONCURRENCY = 8;
+    private static final long PHASE_MS = 1000;
+    private static final String CACHED = "/qr?data=https%3A%2F%2Fexample.com%2Fkiosk&size=256";
+
+    private HttpServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        QrApi qrApi = new QrApi();
+        server = new HttpServer((request, response) -> {
+            if (!qrApi.handle(request, response)) {
+                response.sendText(404, "Not found");
+            }
+        });
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        port = server.getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    @Category(LoadTests.class)
+    public void cachedImageHoldsUpUnderLoad() throws Exception {
+        assertEquals(200, LoopbackClient.get(port, CACHED).status);
+        LoadGenerator.Result result = LoadGenerator.run("cached png", port, CONCURRENCY, PHASE_MS,
+            Collections.emptyMap(), (worker, i) -> CACHED);
+        assertEquals(result.toString(), 0, result.errors);
+        assertEquals(result.toString(), result.latencyNanos.length, result.count(200));
+    }
+
+    @Test
+    @Category(LoadTests.class)
+    public void revalidationAnswers304() throws Exception {
+        LoopbackClient.Response first = LoopbackClient.get(port, CACHED);
+        String etag = first.header("etag");
+        assertNotNull(etag);
+        Map<String, String> headers = Collections.singletonMap("If-None-Match", etag);
+        LoadGenerator.Result result = LoadGenerator.run("If-None-Match", port, CONCURRENCY, PHASE_MS,
+            headers, (worker, i) -> CACHED);
+        assertEquals(result.toString(), 0, result.errors);
+        assertEquals(result.toString(), result.latencyNanos.length, result.count(304));
+    }
+
+    // Only the status codes are checked; how many renders finish in the phase depends on the machine
+    @Test
+    @Category(LoadTests.class)
+    public void uniqueRendersShedLoadWith503() throws Exception {
+        LoadGenerator.Result result = LoadGenerator.run("unique renders", port, CONCURRENCY, PHASE_MS,
+            Collections.emptyMap(), (worker, i) -> "/qr?size=256&data=load-" + worker + "-" + i);
+        assertEquals(result.toString(), 0, result.errors);
+        assertEquals(result.toString(), result.latencyNanos.length, result.count(200) + result.count(503));
+    }
+
+    @Test
+    public void overloadAnswersCarryNoCachingHeaders() throws Exception {
+        Queue<LoopbackClient.Response> shed = new ConcurrentLinkedQueue<>();
+        Queue<Exception> failures = new ConcurrentLinkedQueue<>();
+        Thread[] clients = new Thread[CONCURRENCY];
+        for (int c = 0; c < CONCURRENCY; c++) {
+            int client = c;
+            clients[c] = new Thread(() -> {
+                for (int i = 0; i < 10; i++) {
+                    try {
+                        LoopbackClient.Response response =
+                            LoopbackClient.get(port, "/qr?size=512&data=shed-" + client + "-" + i);
+                        if (response.status == 503) shed.add(response);
+                    } catch (Exception e) {
+                        failures.add(e);
+                    }
+                }
+            });
+            clients[c].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        // A cached 503 would stick for a day and later revalidate into a 304 for nothing
+        for (LoopbackClient.Response response : shed) {
+            assertNull(response.header("etag"));
+            assertNull(response.header("cache-control"));
+            assertEquals("1", response.header("retry-after"));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+// StructuredAppendTest.java - Stored rows render back as the codes they were generated as
+package com.qrmaster.app.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import com.google.zxing.BarcodeFormat;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class StructuredAppendTest {
+
+    private static String text(int length) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; content.length() < length; i++) {
+            content.append("line ").append(i).append(" of a long note; ");
+        }
+        return content.substring(0, length);
+    }
+
+    @Test
+    public void shortContentStaysOneCode() throws Exception {
+        List<Symbol> symbols = StructuredAppend.encodeStored("https://example.com", "URL", "QR_CODE");
+        assertEquals(1, symbols.size());
+        assertNotNull(symbols.get(0).qr);
+    }
+
+    @Test
+    public void oversizedContentComesBackAsItsParts() throws Exception {
+        // Past what a single version 40 code holds
+        String content = text(4000);
+        StructuredAppend.Split generated = StructuredAppend.split(content,
+            part -> SymbologyRegistry.encode(part, "Text", BarcodeFormat.QR_CODE, false));
+
+        List<Symbol> stored = StructuredAppend.encodeStored(content, "Text", "QR_CODE");
+        assertEquals(generated.symbols.size(), stored.size());
+        for (Symbol symbol : stored) {
+            assertTrue(symbol.qr.version <= StructuredAppend.PART_VERSION);
+        }
+
+        StructuredAppend.Assembler assembler = new StructuredAppend.Assembler();
+        for (String payload : generated.payloads) {
+            assembler.offer(StructuredAppend.parse(payload));
+        }
+        assertEquals(content, assembler.assemble());
+    }
+
+    @Test
+    public void denseContentIsSplitRatherThanOneLargeCode() throws Exception {
+        // Fits one code, but only past SPLIT_ABOVE_VERSION
+        List<Symbol> stored = StructuredAppend.encodeStored(text(1200), "Text", "QR_CODE");
+        assertTrue(stored.size() > 1);
+    }
+
+    @Test
+    public void otherSymbologiesAreNeverSplit() throws Exception {
+        List<Symbol> stored = StructuredAppend.encodeStored(text(300), "Text", "DATA_MATRIX");
+        assertEquals(1, stored.size());
+        assertEquals(BarcodeFormat.DATA_MATRIX, stored.get(0).format);
+        assertNull(stored.get(0).qr);
+    }
+}